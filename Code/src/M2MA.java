@@ -8,19 +8,23 @@
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Scanner;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.IntFunction;
 
-import org.apache.commons.math3.linear.Array2DRowRealMatrix;
-import org.apache.commons.math3.linear.ArrayRealVector;
-import org.apache.commons.math3.linear.DecompositionSolver;
 import org.apache.commons.math3.linear.MatrixUtils;
 import org.apache.commons.math3.linear.RealMatrix;
-import org.apache.commons.math3.linear.RealVector;
 
 public class M2MA {
 	
@@ -63,6 +67,12 @@ public class M2MA {
 	public static HashMap<Integer, ArrayList<Integer>> inputFinalVector;
 	public static HashMap<Integer, ArrayList<Integer>>[] inputTransitionMatrices;
 	public static HashMap<String, Integer> Hankel;
+	// number of membership queries answered by the target function (and not by Hankel) while learning
+	public static long numMQ;
+	// number of those membership queries asked by equivalence queries
+	public static long numEQMQ;
+	// number of rounds of the learning algorithm, counted for the checkpoint interval
+	public static int round;
 	
 	// minimized mod-2-MA
 	public static HashMap<Integer, ArrayList<Integer>> minFinalVector;
@@ -77,7 +87,19 @@ public class M2MA {
 	// row and column indices of the observation table being constructed
 	public static ArrayList<String> learnedRowIndices;
 	public static ArrayList<String> learnedColIndices;
+	// tableBits[x] has bit j = F(x+y_j) for the first tableKnown[x] columns y_j, for the rows x and their one-letter
+	// extensions, so a new hypothesis only queries the columns added since the previous one
+	private static HashMap<String, long[]> tableBits = new HashMap<String, long[]>();
+	private static HashMap<String, Integer> tableKnown = new HashMap<String, Integer>();
+	// the columns of tableBits
+	private static ArrayList<String> tableCols = new ArrayList<String>();
 	public static String counterExample;
+	// counter-examples returned by the last EQ, counterExample is the first of them
+	public static ArrayList<String> counterExamples;
+	// the same counter-examples, so that a word found twice fills only one slot of the batch
+	private static HashSet<String> counterExampleSet = new HashSet<String>();
+	// maximum number of counter-examples returned by an EQ (set with the option batch=N)
+	public static int maxCounterExamples = 1;
 
 	// learned mod-2-MA
 	public static HashMap<Integer, ArrayList<Integer>> resultFinalVector;
@@ -93,6 +115,12 @@ public class M2MA {
 	// true if running minimize.java
 	public static boolean inMinimize = false;
 	
+	// number of threads used by minimize (set with threads=N)
+	public static int numThreads = Runtime.getRuntime().availableProcessors();
+	private static ForkJoinPool pool;
+	// minimum number of rows of a block of a matrix product computed by a single task
+	public static final int BLOCK_ROWS = 64;
+	
 	public static void main(String[] args) throws Exception {
 		System.out.println("Program Description:");
 		System.out.println("The program takes in as input an M2MA and prints to stdout the M2MA "
@@ -177,26 +205,113 @@ public class M2MA {
 		String[] arrInput = in.nextLine().split(" ");
 		startTime = System.nanoTime();
 		
-		if (arrInput.length > 2) {
-			throwException(null, "Invalid input: too many inputs passed.");
-		}
-		
 		// handle flags
 		observationTableFlag = false;
 		minProgressFlag = false;
 		minDimensionFlag = false;
 		dfaFlag = false;
-		if (arrInput.length == 2) {
-			if (vFlag && arrInput[1].contains("v")) {
+		boolean flagsRead = false;
+		for (int i=1; i<arrInput.length; i++) {
+			// options of the form seed=N and lengths=... for the random tests
+			if (wordGenerator.parseOption(arrInput[i])) {
+				continue;
+			}
+			// option of the form oracle=... for learning a SUBA from its own queries
+			if (subaOracle.parseOption(arrInput[i])) {
+				continue;
+			}
+			if (arrInput[i].startsWith("checkpoint=")) {
+				checkpoint.interval = Integer.parseInt(arrInput[i].substring(11));
+				continue;
+			}
+			if (arrInput[i].startsWith("warm=")) {
+				warmStart.fileName = arrInput[i].substring(5);
+				continue;
+			}
+			if (arrInput[i].startsWith("save=")) {
+				warmStart.saveFileName = arrInput[i].substring(5);
+				continue;
+			}
+			if (arrInput[i].startsWith("threads=")) {
+				numThreads = Integer.parseInt(arrInput[i].substring(8));
+				if (numThreads < 1) {
+					throwException(null, "Invalid input: the number of threads must be positive.");
+				}
+				continue;
+			}
+			if (arrInput[i].startsWith("minimizer=")) {
+				if (arrInput[i].equals("minimizer=krylov")) {
+					krylovMinimization.enabled = true;
+				} else if (!arrInput[i].equals("minimizer=table")) {
+					throwException(null, "Invalid input: unknown minimization algorithm.");
+				}
+				continue;
+			}
+			if (arrInput[i].startsWith("ufa=")) {
+				if (arrInput[i].equals("ufa=kronecker")) {
+					kroneckerUFA.enabled = true;
+				} else if (!arrInput[i].equals("ufa=sparse")) {
+					throwException(null, "Invalid input: unknown UFA representation.");
+				}
+				continue;
+			}
+			if (arrInput[i].startsWith("monoid=")) {
+				nbaMonoid.limit = Integer.parseInt(arrInput[i].substring(7));
+				if (nbaMonoid.limit < 0 || nbaMonoid.limit > 16384) {
+					throwException(null, "Invalid input: the size of the monoid must be between 0 and 16384.");
+				}
+				continue;
+			}
+			if (arrInput[i].startsWith("cache=")) {
+				nbaEngine.cacheBytes = Long.parseLong(arrInput[i].substring(6)) << 20;
+				if (nbaEngine.cacheBytes < 0) {
+					throwException(null, "Invalid input: the size of the cache cannot be negative.");
+				}
+				continue;
+			}
+			if (arrInput[i].startsWith("trie=")) {
+				nbaEngine.trieBytes = Long.parseLong(arrInput[i].substring(5)) << 20;
+				if (nbaEngine.trieBytes < 0) {
+					throwException(null, "Invalid input: the size of the trie cannot be negative.");
+				}
+				continue;
+			}
+			if (arrInput[i].startsWith("memory=")) {
+				// the out-of-core mode is only available in the krylov backend
+				spillStore.budget = Long.parseLong(arrInput[i].substring(7)) << 20;
+				if (spillStore.budget < 1) {
+					throwException(null, "Invalid input: the memory budget must be positive.");
+				}
+				krylovMinimization.enabled = true;
+				continue;
+			}
+			if (arrInput[i].equals("resume")) {
+				checkpoint.resume = true;
+				continue;
+			}
+			if (arrInput[i].startsWith("batch=")) {
+				maxCounterExamples = Integer.parseInt(arrInput[i].substring(6));
+				if (maxCounterExamples < 1) {
+					throwException(null, "Invalid input: the batch size must be positive.");
+				}
+				continue;
+			}
+			
+			if (flagsRead) {
+				throwException(null, "Invalid input: too many inputs passed.");
+			}
+			flagsRead = true;
+			
+			if (vFlag && arrInput[i].contains("v")) {
 				observationTableFlag = true;
 			}
-			if (mFlag && arrInput[1].contains("m")) {
+			if (mFlag && arrInput[i].contains("m")) {
 				minProgressFlag = true;
 			}
-			if (dFlag && arrInput[1].contains("d")) {
+			if (dFlag && arrInput[i].contains("d")) {
 				minDimensionFlag = true;
 			}
-			if (aFlag && arrInput[1].contains("a")) {
+			if (aFlag && arrInput[i].contains("a")) {
 				dfaFlag = true;
 			}
 		}
@@ -205,6 +320,8 @@ public class M2MA {
 			throwException(null, "Invalid input: cannot have both the -m and -d flags.");
 		}
 		
+		checkpoint.fileName = arrInput[0] + ".checkpoint";
+		
 		System.out.println();
 		
 		return new BufferedReader(new FileReader(arrInput[0]));
@@ -256,10 +373,14 @@ public class M2MA {
 		if (in != null) {
 			in.close();
 		}
+		// the seed is enough to replay a failing run
+		if (wordGenerator.isSeeded()) {
+			message += " (random seed: " + wordGenerator.seed + ")";
+		}
 		throw new Exception(message);
 	}
 	
-	@SuppressWarnings("unchecked")
+	@SuppressWarnings({"unchecked", "rawtypes"})
 	public static void minimize() throws Exception {
 		int inConvert = 0;
 		if (convert.results != null) {
@@ -280,9 +401,10 @@ public class M2MA {
 			displayMatrix(inputFinalVector);
 			
 			System.out.println("Transition Matrices:\n");
-			for (int i=0; i<inputTransitionMatrices.length; i++) {
+			HashMap<Integer, ArrayList<Integer>>[] displayedMatrices = inputTransitionMatrices != null ? inputTransitionMatrices : kroneckerUFA.input.toSparse();
+			for (int i=0; i<displayedMatrices.length; i++) {
 				System.out.println("Letter " + alphabet[i]);
-				displayMatrix(inputTransitionMatrices[i]);
+				displayMatrix(displayedMatrices[i]);
 			}
 			
 			System.out.println("Minimization in progress...");
@@ -291,47 +413,98 @@ public class M2MA {
 			System.out.println("Minimization in progress...");
 		}
 		
-		ArrayList<String> stateSpaceBasisIndices = new ArrayList<String>();
-		HashMap<String, HashMap<Integer, ArrayList<Integer>>> stateSpaceIndexToVector = new HashMap<String, HashMap<Integer, ArrayList<Integer>>>();
-		HashMap<Integer, ArrayList<Integer>> stateSpaceBasis = basis(inputFinalVector, inputTransitionMatrices, stateSpaceIndexToVector, stateSpaceBasisIndices, true);
-		
-		if ((inConvert == 0) && (minProgressFlag || minDimensionFlag)) {
-			System.out.println("Created the state space.");
+		// a deterministic input is first reduced to its quotient by partition refinement
+		boolean deterministic = inputTransitionMatrices != null && partitionRefinement.isDeterministic(inputTransitionMatrices);
+		if (deterministic) {
+			partitionRefinement.quotient(inputFinalVector, inputTransitionMatrices, inputSize);
+			
+			if ((inConvert == 0) && (minProgressFlag || minDimensionFlag)) {
+				System.out.println("Deterministic input: merged into " + partitionRefinement.quotientSize + " states by partition refinement.");
+			}
 		}
+		HashMap<Integer, ArrayList<Integer>> reducedFinalVector = deterministic ? partitionRefinement.quotientFinalVector : inputFinalVector;
+		HashMap<Integer, ArrayList<Integer>>[] reducedTransitionMatrices = deterministic ? partitionRefinement.quotientTransitionMatrices : inputTransitionMatrices;
+		int reducedSize = deterministic ? partitionRefinement.quotientSize : inputSize;
+		// a structured UFA has no transition matrices, its rows and columns are computed from its Kronecker factors
+		transitionSource reducedTransitions = reducedTransitionMatrices != null ? new sparseTransitions(reducedTransitionMatrices, reducedSize) : kroneckerUFA.input;
 		
+		ArrayList<String> stateSpaceBasisIndices = new ArrayList<String>();
+		HashMap<String, HashMap<Integer, ArrayList<Integer>>> stateSpaceIndexToVector = new HashMap<String, HashMap<Integer, ArrayList<Integer>>>();
 		ArrayList<String> coStateSpaceBasisIndices = new ArrayList<String>();
 		HashMap<String, HashMap<Integer, ArrayList<Integer>>> coStateSpaceIndexToVector = new HashMap<String, HashMap<Integer, ArrayList<Integer>>>();
-		HashMap<Integer, ArrayList<Integer>> coStateSpaceBasis = basis(inputFinalVector, inputTransitionMatrices, coStateSpaceIndexToVector, coStateSpaceBasisIndices, false);
+		HashMap<Integer, ArrayList<Integer>> observationTable = null;
 		
-		if ((inConvert == 0) && (minProgressFlag || minDimensionFlag)) {
-			System.out.println("Created the co-state space.");
-			if (minProgressFlag) {
-				System.out.println();
+		if (krylovMinimization.enabled) {
+			// state space and co-state space of the input projected onto its state space, the observation table is not formed
+			krylovMinimization.project(reducedFinalVector, reducedTransitions, reducedSize, stateSpaceBasisIndices, coStateSpaceBasisIndices);
+			
+			if ((inConvert == 0) && (minProgressFlag || minDimensionFlag)) {
+				System.out.println("Created the state space and the co-state space of the projected input.");
+			}
+		} else {
+			// the state space and co-state space are independent, so the co-state space is formed by another thread
+			Future<HashMap<Integer, ArrayList<Integer>>> coStateSpaceTask = submit(() -> basis(reducedFinalVector, reducedTransitions, coStateSpaceIndexToVector, coStateSpaceBasisIndices, false));
+			
+			HashMap<Integer, ArrayList<Integer>> stateSpaceBasis = basis(reducedFinalVector, reducedTransitions, stateSpaceIndexToVector, stateSpaceBasisIndices, true);
+			
+			if ((inConvert == 0) && (minProgressFlag || minDimensionFlag)) {
+				System.out.println("Created the state space.");
 			}
+			
+			HashMap<Integer, ArrayList<Integer>> coStateSpaceBasis = join(coStateSpaceTask);
+			
+			if ((inConvert == 0) && (minProgressFlag || minDimensionFlag)) {
+				System.out.println("Created the co-state space.");
+			}
+			
+			// (state space x co-state space) observation table
+			observationTable = multiplyParallel(stateSpaceBasis, coStateSpaceBasis);
 		}
 		
-		// (state space x co-state space) observation table
-		HashMap<Integer, ArrayList<Integer>> observationTable = multiply(stateSpaceBasis, coStateSpaceBasis);
+		if ((inConvert == 0) && minProgressFlag) {
+			System.out.println();
+		}
 		
 		if ((inConvert == 0) && minDimensionFlag) {
 			System.out.println("Created the observation table.");
 		}
 		
 		if ((inConvert == 0) && minProgressFlag) {
+			if (krylovMinimization.enabled) {
+				observationTable = krylovMinimization.observationTable();
+			}
 			System.out.println("Observation table:" );
-			System.out.println("Dimension: " + stateSpaceBasis.get(0).get(0) + " x " + coStateSpaceBasis.get(0).get(1));
+			System.out.println("Dimension: " + observationTable.get(0).get(0) + " x " + observationTable.get(0).get(1));
 			System.out.println("Rows: " + displayIndices(stateSpaceBasisIndices));
 			System.out.println("Cols: " + displayIndices(coStateSpaceBasisIndices));
 			displayMatrix(observationTable);
 		}
 		
 		// obtain the smallest set of linearly independent rows and columns from observationTable
+		rankFactorization factorization = krylovMinimization.enabled ? krylovMinimization.factorization() : new rankFactorization(observationTable);
+		
 		minRowIndices = new ArrayList<String>();
-		HashMap<Integer, ArrayList<Integer>> linIndRowsObservationTable = linIndSubMatrixRows(observationTable, stateSpaceBasisIndices, minRowIndices);
+		minColIndices = new ArrayList<String>();
+		HashMap<Integer, ArrayList<Integer>> minObservationTable;
+		if (factorization.rank() == 0) {
+			minRowIndices.add("");
+			minColIndices.add("");
+			minObservationTable = initialize(1, 1);
+		} else {
+			for (int row : factorization.getRows()) {
+				minRowIndices.add(stateSpaceBasisIndices.get(row - 1));
+			}
+			for (int col : factorization.getCols()) {
+				minColIndices.add(coStateSpaceBasisIndices.get(col - 1));
+			}
+			minObservationTable = krylovMinimization.enabled ? factorization.getSubMatrix(krylovMinimization.tableRows()) : factorization.getSubMatrix(observationTable);
+		}
 		
-		minSize = linIndRowsObservationTable.get(0).get(0);
+		minSize = minObservationTable.get(0).get(0);
 		
 		if (inConvert == 1) {
+			factorization.close();
+			krylovMinimization.close();
 			return;
 		}
 		
@@ -346,9 +519,6 @@ public class M2MA {
 			}
 		}
 		
-		minColIndices = new ArrayList<String>();
-		HashMap<Integer, ArrayList<Integer>> minObservationTable = linIndSubMatrixCols(linIndRowsObservationTable, coStateSpaceBasisIndices, minColIndices);
-		
 		if ((inConvert == 0) && minProgressFlag) {
 			System.out.println("Minimized observation table:");
 			System.out.println("Dimension: " + minSize);
@@ -374,33 +544,83 @@ public class M2MA {
 				tested = new boolean[1][1];	
 			}
 			
+			factorization.close();
+			krylovMinimization.close();
 			return;
 		}
 		
-		DecompositionSolver solver = new solver(sparseToReal(minObservationTable)).getSolver();
-		HashMap<Integer, ArrayList<Integer>> tableInverse = realToSparse(solver.getInverse());
+		// the factors of observationTable give the inverse of minObservationTable directly
+		HashMap<Integer, ArrayList<Integer>> tableInverse = factorization.getInverse();
+		factorization.close();
 		
 		Hankel = new HashMap<String, Integer>();
 		
 		// minTransitionMatrices = xSigma*tableInverse, where xSigma is the matrix where row_i = row_(x_i+σ) of the observation table
 		minTransitionMatrices = new HashMap[alphabet.length];
 		int dim = minObservationTable.get(0).get(0);
-		for (int i=0; i<alphabet.length; i++) {	
-			minTransitionMatrices[i] = initialize(dim, dim);
-			HashMap<Integer, ArrayList<Integer>> xSigma = initialize(dim, dim);
+		
+		// rows are the state vectors of minRowIndices, columns are the co-state vectors of minColIndices
+		HashMap<Integer, ArrayList<Integer>> stateBasisRows = initialize(dim, reducedSize);
+		HashMap<Integer, ArrayList<Integer>> coStateBasisCols = initialize(reducedSize, dim);
+		for (int j=0; j<dim && !krylovMinimization.enabled; j++) {
+			ArrayList<Integer> stateVector = stateSpaceIndexToVector.get(minRowIndices.get(j)).get(1);
+			if (stateVector != null) {
+				for (int num : stateVector) {
+					addElement(stateBasisRows, j+1, num);
+				}
+			}
 			
-			for (int j=0; j<dim; j++) {			
-				for (int k=0; k<dim; k++) {
-					HashMap<Integer, ArrayList<Integer>> stateVector = stateSpaceIndexToVector.get(minRowIndices.get(j));
-					HashMap<Integer, ArrayList<Integer>> coStateVector = coStateSpaceIndexToVector.get(minColIndices.get(k));
-					
-					if (dotProduct(multiply(stateVector, inputTransitionMatrices[i]).get(1), coStateVector.get(-1)) == 1) {
-						addElement(xSigma, j+1, k+1);
+			ArrayList<Integer> coStateVector = coStateSpaceIndexToVector.get(minColIndices.get(j)).get(-1);
+			if (coStateVector != null) {
+				for (int num : coStateVector) {
+					addElement(coStateBasisCols, num, j+1);
+				}
+			}
+		}
+		
+		// stateBasisRows * transitionMatrix_σ for every letter σ of a structured UFA, from one extension of every row
+		HashMap<Integer, ArrayList<Integer>>[] structuredRows = new HashMap[alphabet.length];
+		if (reducedTransitionMatrices == null && !krylovMinimization.enabled) {
+			IntFunction<int[]> stackedTransitions = reducedTransitions.stacked(true);
+			for (int i=0; i<alphabet.length; i++) {
+				structuredRows[i] = initialize(dim, reducedSize);
+			}
+			for (int j=1; j<=dim; j++) {
+				if (stateBasisRows.get(j) != null) {
+					ArrayList<Integer>[] extensions = extendVector(stateBasisRows.get(j), stackedTransitions, reducedSize, alphabet.length);
+					for (int i=0; i<alphabet.length; i++) {
+						for (int num : extensions[i]) {
+							addElement(structuredRows[i], j, num);
+						}
 					}
 				}
 			}
-
-			minTransitionMatrices[i] = multiply(xSigma, tableInverse);
+		}
+		
+		// the transition matrices of the letters are computed in parallel
+		ArrayList<Future<HashMap<Integer, ArrayList<Integer>>>> letterTasks = new ArrayList<Future<HashMap<Integer, ArrayList<Integer>>>>();
+		for (int i=0; i<alphabet.length; i++) {
+			int letter = i;
+			letterTasks.add(submit(() -> {
+				HashMap<Integer, ArrayList<Integer>> xSigma;
+				if (krylovMinimization.enabled) {
+					xSigma = krylovMinimization.xSigma(letter, factorization.getRows());
+				} else if (reducedTransitionMatrices == null) {
+					// xSigma = (stateBasisRows * transitionMatrix_σ) * coStateBasisCols, the rows are extended by the structured UFA
+					xSigma = multiplyParallel(structuredRows[letter], coStateBasisCols);
+				} else {
+					// xSigma = stateBasisRows * transitionMatrix_σ * coStateBasisCols
+					xSigma = multiplyParallel(multiplyParallel(stateBasisRows, reducedTransitionMatrices[letter]), coStateBasisCols);
+				}
+				
+				return multiplyParallel(xSigma, tableInverse);
+			}));
+		}
+		for (int i=0; i<alphabet.length; i++) {
+			minTransitionMatrices[i] = join(letterTasks.get(i));
+		}
+		if (krylovMinimization.enabled) {
+			krylovMinimization.close();
 		}
 		
 		// minFinalVector is the first column of minObservationTable
@@ -446,156 +666,159 @@ public class M2MA {
 	}
 	
 	// follows algorithm 1 detailed in Thon and Jaeger to form the basis for the state/co-state space
-	public static HashMap<Integer, ArrayList<Integer>> basis(HashMap<Integer, ArrayList<Integer>> hypothesisFinalVector, HashMap<Integer, ArrayList<Integer>>[] hypothesisTransitionMatrices, HashMap<String, HashMap<Integer, ArrayList<Integer>>> indexToVector, ArrayList<String> indices, boolean stateSpace) throws Exception {
-		// set with elements to try to add to the basis
-		ArrayList<HashMap<Integer, ArrayList<Integer>>> tests = new ArrayList<HashMap<Integer, ArrayList<Integer>>>();
+	public static HashMap<Integer, ArrayList<Integer>> basis(HashMap<Integer, ArrayList<Integer>> hypothesisFinalVector, transitionSource hypothesisTransitions, HashMap<String, HashMap<Integer, ArrayList<Integer>>> indexToVector, ArrayList<String> indices, boolean stateSpace) throws Exception {
+		int dimension = hypothesisFinalVector.get(0).get(1);
+		
+		// queue of the supports of the vectors to try to add to the basis
+		ArrayDeque<ArrayList<Integer>> tests = new ArrayDeque<ArrayList<Integer>>();
+		// contains the corresponding string for every element in tests
+		ArrayDeque<String> testStrings = new ArrayDeque<String>();
+		// every vector that has been added to tests, a vector seen before is linearly dependent with the basis by the time it is tested
+		HashSet<BitSet> seen = new HashSet<BitSet>();
 		
 		HashMap<Integer, ArrayList<Integer>> basis;
 		int sizeBasis = 0;
-		HashMap<Integer, ArrayList<Integer>> hypothesisFinalVectorTranpose = null;
 		
 		if (stateSpace) {
-			basis = initialize(1, hypothesisFinalVector.get(0).get(1));
+			basis = initialize(1, dimension);
 			
 			// begin with ω_i = (1,0,0,...,0)
-			HashMap<Integer, ArrayList<Integer>> w_i = initialize(1, hypothesisFinalVector.get(0).get(1));
-			addElement(w_i, 1, 1);
+			ArrayList<Integer> w_i = new ArrayList<Integer>();
+			w_i.add(1);
 			tests.add(w_i);
 		} else {
-			basis = initialize(hypothesisFinalVector.get(0).get(1), 1);		
+			basis = initialize(dimension, 1);
 			
 			// begin with the transpose of hypothesisFinalVector
-			hypothesisFinalVectorTranpose = initialize(hypothesisFinalVector.get(0).get(1), 1);
+			ArrayList<Integer> finalVector = new ArrayList<Integer>();
 			if (hypothesisFinalVector.get(1) != null) {
-				for (int col : hypothesisFinalVector.get(1)) {
-					addElement(hypothesisFinalVectorTranpose, col, 1);
-				}
+				finalVector.addAll(hypothesisFinalVector.get(1));
 			}
-			
-			tests.add(hypothesisFinalVectorTranpose);
+			tests.add(finalVector);
 		}
-		
-		int sizeTests = 1;
-		
-		// contains the corresponding string for every element in tests
-		ArrayList<String> testStrings = new ArrayList<String>();
 		testStrings.add("");
+		seen.add(toBitSet(tests.peek()));
 		
 		ArrayList<int[]> operations = new ArrayList<int[]>();
 		
-		while (sizeTests > 0) {
-			HashMap<Integer, ArrayList<Integer>> test = tests.remove(0);
-			String testString = testStrings.remove(0);
-			sizeTests--;
+		// basis for the set span((initial vector) * (transitionMatrix_ω) : ω∈Σ*) uses the rows of the transition matrices
+		// and span((transitionMatrix_ω) * (final vector) : ω∈Σ*) uses the columns
+		IntFunction<int[]> stackedTransitions = hypothesisTransitions.stacked(stateSpace);
+		
+		// once the basis spans the whole space every remaining test is linearly dependent
+		while (!tests.isEmpty() && sizeBasis < dimension) {
+			ArrayList<Integer> test = tests.poll();
+			String testString = testStrings.poll();
 			
-			if (linInd(stateSpace ? test.get(1) : test.get(-1), operations, sizeBasis, hypothesisFinalVector.get(0).get(1))) {	
+			if (linInd(test, operations, sizeBasis, dimension)) {
 				// extend the basis
 				sizeBasis++;
+				HashMap<Integer, ArrayList<Integer>> testVector;
 				if (stateSpace) {
 					basis.get(0).set(0, sizeBasis);
-					for (int num : test.get(1)) {
+					testVector = initialize(1, dimension);
+					for (int num : test) {
 						addElement(basis, sizeBasis, num);
+						addElement(testVector, 1, num);
 					}
 				} else {
 					basis.get(0).set(1, sizeBasis);
-					for (int num : test.get(-1)) {
+					testVector = initialize(dimension, 1);
+					for (int num : test) {
 						addElement(basis, num, sizeBasis);
+						addElement(testVector, num, 1);
 					}
 				}
 				
 				indices.add(testString);
-				indexToVector.put(testString, test);
+				indexToVector.put(testString, testVector);
 				
-				// add to tests the one-letter extensions of test
+				// add to tests the one-letter extensions of test that have not been seen
+				ArrayList<Integer>[] newTests = extendVector(test, stackedTransitions, dimension, alphabet.length);
 				for (int i=0; i<alphabet.length; i++) {
-					HashMap<Integer, ArrayList<Integer>> newTest;
+					ArrayList<Integer> newTest = newTests[i];
 					
-					if (stateSpace) {
-						// basis for the set span((initial vector) * (transitionMatrix_ω) : ω∈Σ*)
-						newTest = multiply(test, hypothesisTransitionMatrices[i]);
-						testStrings.add(addStrings(testString, alphabet[i]));
-					} else {
-						// basis for the set span((transitionMatrix_ω) * (final vector) : ω∈Σ*)
-						newTest = multiply(hypothesisTransitionMatrices[i], test);
-						testStrings.add(addStrings(alphabet[i], testString));
+					if (newTest.size() > 0 && seen.add(toBitSet(newTest))) {
+						tests.add(newTest);
+						testStrings.add(stateSpace ? addStrings(testString, alphabet[i]) : addStrings(alphabet[i], testString));
 					}
-					
-					tests.add(newTest);
-					sizeTests++;
 				}
 			}
 		}
 		
 		if (sizeBasis == 0) {
 			indices.add("");
-			indexToVector.put("", hypothesisFinalVectorTranpose);
+			indexToVector.put("", initialize(dimension, 1));
 		}
 		
 		return basis;
 	}
 	
-	// finds a maximal submatrix of linearly independent rows/columns of the observation table
-	public static HashMap<Integer, ArrayList<Integer>> linIndSubMatrixRows(HashMap<Integer, ArrayList<Integer>> observationTable, ArrayList<String> oldIndices, ArrayList<String> newIndices) throws Exception {
-		HashMap<Integer, ArrayList<Integer>> newObservationTable = initialize(0, observationTable.get(0).get(1));
-		int sizeT = 0;
-		
-		ArrayList<int[]> operations = new ArrayList<int[]>();
-		
-		for (int row : observationTable.keySet()) {
-			if (row > 0) {
-				// extend the current subset of linearly independent rows/columns
-				if (linInd(observationTable.get(row), operations, sizeT, newObservationTable.get(0).get(1))) {
-					sizeT++;
-					newObservationTable.get(0).set(0, sizeT);
-					
-					for (int num : observationTable.get(row)) {
-						addElement(newObservationTable, sizeT, num);
+	/*
+	 * Stacks the transition matrices of all letters into one letter-interleaved layout, where stacked[k] lists
+	 * j*(number of letters) + σ in increasing order for every 1 at (k, j) of transitionMatrix_σ (at (j, k) if rows is
+	 * false). The extensions of a vector by every letter are then computed in a single pass over its support.
+	 */
+	public static int[][] stackTransitions(HashMap<Integer, ArrayList<Integer>>[] transitionMatrices, int dimension, boolean rows) {
+		int numLetters = transitionMatrices.length;
+		int[][] stacked = new int[dimension + 1][];
+		
+		for (int k=1; k<=dimension; k++) {
+			int size = 0;
+			for (int i=0; i<numLetters; i++) {
+				ArrayList<Integer> line = transitionMatrices[i].get(rows ? k : k * -1);
+				if (line != null) {
+					size += line.size();
+				}
+			}
+			
+			stacked[k] = new int[size];
+			size = 0;
+			for (int i=0; i<numLetters; i++) {
+				ArrayList<Integer> line = transitionMatrices[i].get(rows ? k : k * -1);
+				if (line != null) {
+					for (int j : line) {
+						stacked[k][size++] = j * numLetters + i;
 					}
-					
-					newIndices.add(oldIndices.get(row - 1));
 				}
 			}
+			Arrays.sort(stacked[k]);
 		}
 		
-		if ((int) newObservationTable.get(0).get(0) == 0 || (int) newObservationTable.get(0).get(1) == 0) {
-			newObservationTable.get(0).set(0, 1);
-			newObservationTable.get(0).set(1, 1);
-			newIndices.add("");
-		}
-		
-		return newObservationTable;
+		return stacked;
 	}
 	
-	// finds a maximal submatrix of linearly independent rows/columns of the observation table
-	public static HashMap<Integer, ArrayList<Integer>> linIndSubMatrixCols(HashMap<Integer, ArrayList<Integer>> observationTable, ArrayList<String> oldIndices, ArrayList<String> newIndices) throws Exception {
-		HashMap<Integer, ArrayList<Integer>> newObservationTable = initialize(observationTable.get(0).get(0), 0);
-		int sizeT = 0;
-		
-		ArrayList<int[]> operations = new ArrayList<int[]>();
-		
-		for (int col : observationTable.keySet()) {
-			if (col < 0) {
-				// extend the current subset of linearly independent rows/columns
-				if (linInd(observationTable.get(col), operations, sizeT, observationTable.get(0).get(0))) {
-					sizeT++;
-					newObservationTable.get(0).set(1, sizeT);
-					
-					for (int num : observationTable.get(col)) {
-						addElement(newObservationTable, num, sizeT);
-					}
-					
-					newIndices.add(oldIndices.get((col * -1) - 1));
-				}
+	/*
+	 * Returns the supports of v*transitionMatrix_σ (or transitionMatrix_σ*v) for every letter σ, where v is the vector
+	 * with the given support and stacked is the layout returned by transitionSource.stacked().
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public static ArrayList<Integer>[] extendVector(ArrayList<Integer> support, IntFunction<int[]> stacked, int dimension, int numLetters) {
+		boolean[] parity = new boolean[(dimension + 1) * numLetters];
+		for (int k : support) {
+			for (int entry : stacked.apply(k)) {
+				parity[entry] = !parity[entry];
 			}
 		}
 		
-		if ((int) newObservationTable.get(0).get(0) == 0 || (int) newObservationTable.get(0).get(1) == 0) {
-			newObservationTable.get(0).set(0, 1);
-			newObservationTable.get(0).set(1, 1);
-			newIndices.add("");
+		ArrayList<Integer>[] out = new ArrayList[numLetters];
+		for (int i=0; i<numLetters; i++) {
+			out[i] = new ArrayList<Integer>();
 		}
-		
-		return newObservationTable;
+		for (int entry=numLetters; entry<parity.length; entry++) {
+			if (parity[entry]) {
+				out[entry % numLetters].add(entry / numLetters);
+			}
+		}
+		return out;
+	}
+	
+	public static BitSet toBitSet(ArrayList<Integer> support) {
+		BitSet bits = new BitSet();
+		for (int k : support) {
+			bits.set(k);
+		}
+		return bits;
 	}
 	
 	/*
@@ -685,16 +908,44 @@ public class M2MA {
 	}
 	
 	public static void learn() throws Exception {	
+		if (Hankel == null) {
+			Hankel = new HashMap<String, Integer>();
+		}
+		numMQ = 0;
+		numEQMQ = 0;
+		round = 0;
+		tableBits.clear();
+		tableKnown.clear();
+		tableCols.clear();
+		
+		if (checkpoint.resume) {
+			checkpoint.read();
+			System.out.println("Resumed from " + checkpoint.fileName + " with an observation table of size " + learnedSize + ".\n");
+		} else if (warmStart.fileName != null && warmStart.seed()) {
+			System.out.println("Warm-started from " + warmStart.fileName + " with an observation table of size " + learnedSize + ".\n");
+			
+			if (observationTableFlag) {
+				displayTable();
+			}
+		} else {
+			learnStart();
+		}
+		
+		learnMain();
+		
+		if (warmStart.saveFileName != null) {
+			warmStart.save();
+		}
+	}
+	
+	// starts the learning algorithm from the 1x1 observation table
+	public static void learnStart() throws Exception {
 		learnedRowIndices = new ArrayList<String>();
 		learnedColIndices = new ArrayList<String>();
 		learnedRowIndices.add("");
 		learnedColIndices.add("");
 		learnedSize = 1;
 		
-		if (Hankel == null) {
-			Hankel = new HashMap<String, Integer>();
-		}
-		
 		/* 
 		 * F("") cannot equal 0 (otherwise can't form a linearly independent basis of elements in learnedRowIndices).
 		 * The algorithm instead begins with a 2x2 matrix of full rank.
@@ -714,23 +965,49 @@ public class M2MA {
 			System.out.println("Observation table after individual queries\n------------------------------------------");
 			displayTable();
 		}
-
-		learnMain();
 	}
 	
 	public static void learnMain() throws Exception {
-		HashMap<Integer, ArrayList<Integer>> hypothesisFinalVector = createHypothesisFinalVector();
-		HashMap<Integer, ArrayList<Integer>>[] hypothesisTransitionMatrices = createHypothesisTransitionMatrices();
-		
-		if (EQ(hypothesisFinalVector, hypothesisTransitionMatrices)) {
-			resultFinalVector = hypothesisFinalVector;
-			resultTransitionMatrices = hypothesisTransitionMatrices;
-			return;
+		while (true) {
+			HashMap<Integer, ArrayList<Integer>> hypothesisFinalVector = createHypothesisFinalVector();
+			HashMap<Integer, ArrayList<Integer>>[] hypothesisTransitionMatrices = createHypothesisTransitionMatrices();
+			
+			if (EQ(hypothesisFinalVector, hypothesisTransitionMatrices)) {
+				resultFinalVector = hypothesisFinalVector;
+				resultTransitionMatrices = hypothesisTransitionMatrices;
+				return;
+			}
+			
+			growObservationTable(hypothesisTransitionMatrices);
+			
+			round++;
+			if (checkpoint.interval > 0 && round % checkpoint.interval == 0) {
+				checkpoint.write();
+			}
 		}
-		
-		growObservationTable(hypothesisTransitionMatrices);
-		
-		learnMain();
+	}
+	
+	// returns the bits F(x+y_j) of the columns y_j of the observation table, only querying those that are not in tableBits
+	private static long[] tableRow(String x, int words) throws Exception {
+		long[] bits = tableBits.get(x);
+		int known = 0;
+		if (bits == null) {
+			bits = new long[words];
+			tableBits.put(x, bits);
+		} else {
+			known = tableKnown.get(x);
+			if (bits.length < words) {
+				bits = Arrays.copyOf(bits, words);
+				tableBits.put(x, bits);
+			}
+		}
+		for (int j=known; j<learnedSize; j++) {
+			if (MQ(addStrings(x, learnedColIndices.get(j))) == 1) {
+				bits[j >> 6] |= 1L << (j & 63);
+			}
+		}
+		tableKnown.put(x, learnedSize);
+		return bits;
 	}
 	
 	public static HashMap<Integer, ArrayList<Integer>> createHypothesisFinalVector() throws Exception {
@@ -753,32 +1030,60 @@ public class M2MA {
 		HashMap<Integer, ArrayList<Integer>>[] hypothesisTransitionMatrices = new HashMap[alphabet.length];
 		for (int c=0; c<alphabet.length; c++) {
 			hypothesisTransitionMatrices[c] = initialize(learnedSize, learnedSize);
-			String letter = alphabet[c];
-			
-			double[][] F_xi = new double[learnedSize][learnedSize];
-			double[][] F_xi_letter = new double[learnedSize][learnedSize];
-			for (int i=0; i<learnedSize; i++) {
-				for (int j=0; j<learnedSize; j++) {
-					F_xi[j][i] = MQ(addStrings(learnedRowIndices.get(i), learnedColIndices.get(j)));
-					F_xi_letter[i][j] = MQ(addStrings(addStrings(learnedRowIndices.get(i), letter), learnedColIndices.get(j)));
+		}
+		
+		// a column that was replaced (by a warm start, a resume or a rejected counter-example) changes every row
+		int words = (learnedSize + 63) / 64;
+		int common = 0;
+		while (common < tableCols.size() && common < learnedSize && tableCols.get(common).equals(learnedColIndices.get(common))) {
+			common++;
+		}
+		if (common < tableCols.size()) {
+			tableBits.clear();
+			tableKnown.clear();
+		}
+		tableCols = new ArrayList<String>(learnedColIndices.subList(0, learnedSize));
+		
+		// the observation table and its inverse over GF(2) do not depend on the letter, so they are computed once
+		long[][] tableRows = new long[learnedSize][];
+		for (int i=0; i<learnedSize; i++) {
+			tableRows[i] = Arrays.copyOf(tableRow(learnedRowIndices.get(i), words), words);
+		}
+		rankFactorization factorization = new rankFactorization(learnedSize, learnedSize, i -> tableRows[i - 1]);
+		if (factorization.rank() < learnedSize) {
+			// the table is not invertible
+			factorization.close();
+			return hypothesisTransitionMatrices;
+		}
+		// inverseRows[j] = row j of the inverse of the table, bit k-1 is column k
+		long[][] inverseRows = new long[learnedSize][words];
+		HashMap<Integer, ArrayList<Integer>> inverse = factorization.getInverse();
+		factorization.close();
+		for (int j=1; j<=learnedSize; j++) {
+			if (inverse.get(j) != null) {
+				for (int k : inverse.get(j)) {
+					inverseRows[j - 1][(k - 1) >> 6] |= 1L << ((k - 1) & 63);
 				}
 			}
-			
-			// solve the matrix equation using LU Decomposition
-			RealMatrix coefficients = new Array2DRowRealMatrix(F_xi);
-			DecompositionSolver solver = new solver(coefficients).getSolver();
+		}
+		
+		// the coefficients of F_{xi+letter} are F_{xi+letter} times the inverse of the table
+		for (int c=0; c<alphabet.length; c++) {
+			String letter = alphabet[c];
 			for (int i=0; i<learnedSize; i++) {
-				RealVector constants = new ArrayRealVector(F_xi_letter[i]);
-				try {
-					RealVector solution = solver.solve(constants);
-					for(int j=0; j<learnedSize; j++) {
-						if (mod2(solution.getEntry(j)) == 1) {
-							addElement(hypothesisTransitionMatrices[c], i + 1, j + 1);
+				long[] extension = tableRow(addStrings(learnedRowIndices.get(i), letter), words);
+				long[] coefficients = new long[words];
+				for (int j=0; j<learnedSize; j++) {
+					if ((extension[j >> 6] & (1L << (j & 63))) != 0) {
+						for (int w=0; w<words; w++) {
+							coefficients[w] ^= inverseRows[j][w];
 						}
 					}
-				} catch(Exception e) {
-					// matrix is not invertible
-					hypothesisTransitionMatrices[c] = initialize(learnedSize, learnedSize);
+				}
+				for (int k=0; k<learnedSize; k++) {
+					if ((coefficients[k >> 6] & (1L << (k & 63))) != 0) {
+						addElement(hypothesisTransitionMatrices[c], i + 1, k + 1);
+					}
 				}
 			}
 		}
@@ -792,22 +1097,35 @@ public class M2MA {
 			return Hankel.get(word);
 		}
 		
+		// for an NBA or a SUBA, every encoding u$v of u(v)^ω shares the Hankel entry of its normal form
+		String target = word;
+		if (lasso.applies()) {
+			target = lasso.canonical(word);
+			if (Hankel.get(target) != null) {
+				Hankel.put(word, Hankel.get(target));
+				return Hankel.get(target);
+			}
+		}
+		
 		int out = 0;
+		numMQ++;
 		
 		// NBA.java and arbitrary.java use their own MQ functions
 		if(NBA.NBAFinalStates != null) {
-			out = NBA.MQ(word);
+			out = NBA.MQ(target);
+		} else if (subaOracle.enabled) {
+			out = subaOracle.MQ(target);
 		} else if(arbitrary.MQMethod != null) {
 			try {
-				out = (int) arbitrary.MQMethod.invoke(null, word);
+				out = (int) arbitrary.MQMethod.invoke(null, target);
 			} catch (Exception e) {
 				throwException(null, "Invalid input: invalid membership query function.");
 			} 
 		} else {
 			HashMap<Integer, ArrayList<Integer>> current = identity(minSize);
 			
-			String[] wordArr = word.split(" ");
-			if (word.length() == 0) {
+			String[] wordArr = target.split(" ");
+			if (target.length() == 0) {
 				wordArr = new String[0];
 			}
 			
@@ -818,6 +1136,7 @@ public class M2MA {
 			out = dotProduct(current.get(1), minFinalVector.get(1));
 		}
 		
+		Hankel.put(target, out);
 		Hankel.put(word, out);
 		
 		return out;
@@ -825,43 +1144,89 @@ public class M2MA {
 	
 	// MQ for any given final vector and set of transition matrices
 	public static int MQArbitrary(HashMap<Integer, ArrayList<Integer>> finalVector, HashMap<Integer, ArrayList<Integer>>[] transitionMatrices, String word) throws Exception {	
-		HashMap<Integer, ArrayList<Integer>> current = identity(finalVector.get(0).get(1));
-		
-		String[] wordArr = word.split(" ");
-		if (word.length() == 0) {
-			wordArr = new String[0];
+		int[] letters = SUBA.toLetters(word);
+		return MQArbitrary(finalVector, transitionMatrices, letters, letters.length);
+	}
+	
+	// same as MQArbitrary() for the word made of the first len letter indices of word
+	public static int MQArbitrary(HashMap<Integer, ArrayList<Integer>> finalVector, HashMap<Integer, ArrayList<Integer>>[] transitionMatrices, int[] word, int len) throws Exception {
+		return MQArbitrary(finalVector, new sparseTransitions(transitionMatrices, finalVector.get(0).get(1)), word, len);
+	}
+	
+	// same as MQArbitrary() for transitions given by a transitionSource, such as a structured UFA
+	public static int MQArbitrary(HashMap<Integer, ArrayList<Integer>> finalVector, transitionSource transitions, int[] word, int len) throws Exception {
+		// only the first row of the product is needed, so the first row of the identity is multiplied by each letter
+		int dimension = finalVector.get(0).get(1);
+		boolean[] current = new boolean[dimension + 1];
+		if (dimension > 0) {
+			current[1] = true;
+		}
+		
+		for (int i=0; i<len; i++) {
+			boolean[] next = new boolean[dimension + 1];
+			for (int k=1; k<=dimension; k++) {
+				if (current[k]) {
+					transitions.addRow(k, word[i], next);
+				}
+			}
+			current = next;
 		}
 		
-		for (int i=0; i<wordArr.length; i++) {
-			current = multiply(current, transitionMatrices[letterToIndex.get(wordArr[i])]);
+		int out = 0;
+		if (finalVector.get(1) != null) {
+			for (int j : finalVector.get(1)) {
+				if (current[j]) {
+					out = 1 - out;
+				}
+			}
 		}
-		
-		return dotProduct(current.get(1), finalVector.get(1));
+		return out;
 	}
 	
 	public static boolean EQ(HashMap<Integer, ArrayList<Integer>> hypothesisFinalVector, HashMap<Integer, ArrayList<Integer>>[] hypothesisTransitionMatrices) throws Exception {
+		long numMQBefore = numMQ;
+		try {
+			return EQSearch(hypothesisFinalVector, hypothesisTransitionMatrices);
+		} finally {
+			numEQMQ += numMQ - numMQBefore;
+		}
+	}
+	
+	// searches for counter-examples to the hypothesis
+	public static boolean EQSearch(HashMap<Integer, ArrayList<Integer>> hypothesisFinalVector, HashMap<Integer, ArrayList<Integer>>[] hypothesisTransitionMatrices) throws Exception {
 		// NBA.java and arbitrary.java use statistical EQ's
 		if (NBA.NBAFinalStates != null || arbitrary.MQMethod != null) {
 			return arbitrary.EQstatistical(hypothesisFinalVector, hypothesisTransitionMatrices);
 		}
+		// a SUBA answering its own queries has no minimized observation table to test
+		if (subaOracle.enabled) {
+			return subaOracle.EQ(hypothesisFinalVector, hypothesisTransitionMatrices);
+		}
+		
+		clearCounterExamples();
 		
 		// test every element in the observation table of the minimized mod-2-MA
 		for (int i=0; i<minRowIndices.size(); i++) {
 			for (int j=0; j<minColIndices.size(); j++) {
 				if (!tested[i][j]) {
-					// update tested to avoid testing the same words in the next EQ
-					tested[i][j] = true;
-					
 					String test = addStrings(minRowIndices.get(i), minColIndices.get(j));
 	
 					if (MQ(test) != MQArbitrary(hypothesisFinalVector, hypothesisTransitionMatrices, test)) {
-						counterExample = test;
-						return false;
+						if (addCounterExample(test)) {
+							return false;
+						}
+					} else {
+						// update tested to avoid testing the same words in the next EQ
+						tested[i][j] = true;
 					}
 				}
 			}
 		}
 		
+		if (counterExamples.size() != 0) {
+			return false;
+		}
+		
 		if (learnedSize == minSize) {
 			return true;
 		}
@@ -893,20 +1258,99 @@ public class M2MA {
 							}
 							
 							String test = addStrings(addStrings(addStrings(minRowIndices.get(i), letter1), minColIndices.get(j)), letter2);
-							if (MQ(test) != MQArbitrary(hypothesisFinalVector, hypothesisTransitionMatrices, test)) {
-								counterExample = test;
+							if (MQ(test) != MQArbitrary(hypothesisFinalVector, hypothesisTransitionMatrices, test) && addCounterExample(test)) {
 								return false;
 							}
 						}
 					}
 				}
 			}
+			
+			// counter-examples are rare among the extensions, so return those found with the current row index
+			if (counterExamples.size() != 0) {
+				return false;
+			}
 		}
 		
 		return true;
 	}
 	
+	// empties the batch of counter-examples before an EQ
+	public static void clearCounterExamples() {
+		counterExamples = new ArrayList<String>();
+		counterExampleSet.clear();
+	}
+	
+	// adds a counter-example to the batch returned by the EQ unless it is already there, returns true once the batch is full
+	public static boolean addCounterExample(String test) {
+		if (!counterExampleSet.add(test)) {
+			return false;
+		}
+		if (counterExamples.size() == 0) {
+			counterExample = test;
+		}
+		counterExamples.add(test);
+		
+		return counterExamples.size() >= maxCounterExamples;
+	}
+	
+	/*
+	 * Adds a row and a column to the observation table for every counter-example of the last EQ. Each counter-example
+	 * is processed against hypothesisTransitionMatrices, and its row and column are only kept if the rows of the
+	 * observation table remain linearly independent.
+	 */
 	public static void growObservationTable(HashMap<Integer, ArrayList<Integer>>[] hypothesisTransitionMatrices) throws Exception {
+		if (counterExamples == null || counterExamples.size() == 0) {
+			clearCounterExamples();
+			addCounterExample(counterExample);
+		}
+		
+		// dimension of the hypothesis
+		int hypothesisSize = learnedSize;
+		int numAdded = 0;
+		
+		for (String test : counterExamples) {
+			String[] extension = findExtension(hypothesisTransitionMatrices, hypothesisSize, test);
+			
+			if (extension == null) {
+				if (numAdded == 0) {
+					throwException(null, "Algorithm failed: didn't find a suitable omega, sigma, and gamma.");
+				}
+				continue;
+			}
+			
+			if (learnedSize == minSize) {
+				if (numAdded == 0) {
+					throwException(null, "Algorithm failed: size of the hypothesis exceeds that of the target function.");
+				}
+				break;
+			}
+			
+			learnedRowIndices.add(extension[0]);
+			learnedColIndices.add(extension[1]);
+			
+			// the first extension is always independent of the current rows
+			if (numAdded != 0 && !fullRank(learnedRowIndices, learnedColIndices)) {
+				learnedRowIndices.remove(learnedRowIndices.size() - 1);
+				learnedColIndices.remove(learnedColIndices.size() - 1);
+				continue;
+			}
+			
+			learnedSize++;
+			numAdded++;
+		}
+		
+		if (observationTableFlag) {
+			displayTable();
+		}
+	}
+	
+	/*
+	 * Returns {ω, σ+γ} for the first prefix ω+σ of the counter-example on which the hypothesis and the target differ.
+	 * Only the first row μ(ω)_1 of the product of the prefix is needed, so it is kept as a bit set and multiplied by
+	 * one letter per prefix, and only the rows xi with μ(ω)_1,i = 1 are queried.
+	 */
+	public static String[] findExtension(HashMap<Integer, ArrayList<Integer>>[] hypothesisTransitionMatrices, int hypothesisSize, String counterExample) throws Exception {
 		// prefix of the counter-example = ω + σ
 		String w = "";
 		String sigma = "";
@@ -918,72 +1362,99 @@ public class M2MA {
 			counterExampleArr = new String[0];
 		}
 		
+		// μ(ω)_1, the first row of the identity for ω = ""
+		BitSet row_w = new BitSet();
+		row_w.set(1);
+		
 		// go through every possible prefix of the counter-example starting with ω = "" and σ = (first character of ω)
 		for (int i=0; i<counterExampleArr.length; i++) {
 			if (i != 0) {
-				w = "";
-				for (int j=0; j<i-1; j++) {
-					w += counterExampleArr[j] + " ";
-				}
-				if (i >= 1) {
-					w += counterExampleArr[i - 1];
+				w = addStrings(w, counterExampleArr[i - 1]);
+				
+				HashMap<Integer, ArrayList<Integer>> transitionMatrix = hypothesisTransitionMatrices[letterToIndex.get(counterExampleArr[i - 1])];
+				BitSet next = new BitSet();
+				for (int k=row_w.nextSetBit(0); k!=-1; k=row_w.nextSetBit(k + 1)) {
+					if (transitionMatrix.get(k) != null) {
+						for (int j : transitionMatrix.get(k)) {
+							next.flip(j);
+						}
+					}
 				}
+				row_w = next;
 			}
 			sigma = counterExampleArr[i];
 			
-			HashMap<Integer, ArrayList<Integer>> transitionMatrix_w = identity(learnedSize);
-			for (int n=0; n<i; n++) {
-				transitionMatrix_w = multiply(transitionMatrix_w, hypothesisTransitionMatrices[letterToIndex.get(counterExampleArr[n])]);
-			}
-			
-			// if F is the Hankel matrix, check if F_ω = sum(μ(ω)_1,i * F_xi)
-			for (int j=0; j<learnedSize; j++) {
-				int sum = 0;
-				for (int k=0; k<learnedSize; k++) {
-					sum = mod2(sum + getEntry(transitionMatrix_w, 1, k+1) * MQ(addStrings(learnedRowIndices.get(k), learnedColIndices.get(j))));
-				}
-				if (MQ(addStrings(w, learnedColIndices.get(j))) != sum) {
-					break;
-				}
-			}
-			
 			// go through every possible value of y in learnedColIndices
 			// check if F_{ω+σ}(y) != sum(μ(ω)_1,i * F_{xi+σ}(y))
-			for (int j=0; j<learnedSize; j++) {
+			for (int j=0; j<hypothesisSize; j++) {
 				y = learnedColIndices.get(j);
 			
 				int sum = 0;
-				for (int k=0; k<learnedSize; k++) {
-					sum = mod2(sum + getEntry(transitionMatrix_w, 1, k+1) * MQ(addStrings(addStrings(learnedRowIndices.get(k), sigma), y)));
+				for (int k=row_w.nextSetBit(0); k!=-1; k=row_w.nextSetBit(k + 1)) {
+					sum = mod2(sum + MQ(addStrings(addStrings(learnedRowIndices.get(k - 1), sigma), y)));
 				}
 				
 				// found a solution
-				if (MQ(addStrings(addStrings(w, sigma), y)) != sum) {		
-					if (learnedSize == minSize) {
-						throwException(null, "Algorithm failed: size of the hypothesis exceeds that of the target function.");
-					}
+				if (MQ(addStrings(addStrings(w, sigma), y)) != sum) {
+					String[] extension = {w, addStrings(sigma, y)};
+					return extension;
+				}
+			}
+		}
 
-					learnedSize++;
-					learnedRowIndices.add(w);
-					learnedColIndices.add(addStrings(sigma, y));
-					
-					if (observationTableFlag) {
-						displayTable();
+		return null;
+	}
+	
+	// returns true if the observation table with the given rows and columns has full rank over GF(2)
+	public static boolean fullRank(ArrayList<String> rowIndices, ArrayList<String> colIndices) throws Exception {
+		int size = rowIndices.size();
+		int words = (colIndices.size() + 63) / 64;
+		long[][] table = new long[size][words];
+		for (int i=0; i<size; i++) {
+			for (int j=0; j<colIndices.size(); j++) {
+				if (MQ(addStrings(rowIndices.get(i), colIndices.get(j))) == 1) {
+					table[i][j >> 6] |= 1L << (j & 63);
+				}
+			}
+		}
+		
+		// Gaussian elimination, every row must receive a pivot
+		int rank = 0;
+		for (int col=0; col<colIndices.size() && rank<size; col++) {
+			int pivot = -1;
+			for (int row=rank; row<size; row++) {
+				if ((table[row][col >> 6] & (1L << (col & 63))) != 0) {
+					pivot = row;
+					break;
+				}
+			}
+			if (pivot == -1) {
+				continue;
+			}
+			
+			long[] temp = table[pivot];
+			table[pivot] = table[rank];
+			table[rank] = temp;
+			
+			for (int row=rank+1; row<size; row++) {
+				if ((table[row][col >> 6] & (1L << (col & 63))) != 0) {
+					for (int k=0; k<words; k++) {
+						table[row][k] ^= table[rank][k];
 					}
-					
-					return;
 				}
 			}
+			rank++;
 		}
-
-		throwException(null, "Algorithm failed: didn't find a suitable omega, sigma, and gamma.");
+		
+		return rank == size;
 	}
 
 	public static void displayResults() {
 		System.out.println("Learned mod-2-MA");
 		System.out.println("----------------");
 		
-		System.out.println("Dimension: " + learnedSize + '\n');
+		System.out.println("Dimension: " + learnedSize);
+		System.out.println("Membership queries: " + numMQ + " (" + numEQMQ + " asked by equivalence queries)\n");
 		
 		System.out.print("Final Vector: ");
 		displayMatrix(resultFinalVector);
@@ -1024,24 +1495,21 @@ public class M2MA {
 			length--;
 		}
 		
-		String test = "";
-		for (int i=0; i<len-1; i++) {
-			test += alphabet[(int) (Math.random() * length)] + " ";
-		}
-		if (len >= 1) {
-			test +=  alphabet[(int) (Math.random() * length)];
-		}
-		return test;
+		return wordGenerator.toWord(wordGenerator.shared().next(len, length), len);
 	}
 
 	// performs a statistical EQ between the target and final mod-2-MA
 	public static boolean finalCheck(int maxTestLen, int numTests, boolean inMinimize) throws Exception {
+		wordGenerator random = wordGenerator.shared();
+		// a structured UFA has no transition matrices
+		transitionSource inputTransitions = inputTransitionMatrices != null ? new sparseTransitions(inputTransitionMatrices, inputSize) : kroneckerUFA.input;
 		for (int i=1; i<=numTests; i++) {
-			String test = genTest((int) (Math.random() * (maxTestLen + 1)), false);
+			int len = random.nextLength(maxTestLen);
+			int[] test = random.next(len, alphabet.length);
 			
-			if (!inMinimize && MQArbitrary(inputFinalVector, inputTransitionMatrices, test) != MQArbitrary(resultFinalVector, resultTransitionMatrices, test)) {
+			if (!inMinimize && MQArbitrary(inputFinalVector, inputTransitions, test, len) != MQArbitrary(resultFinalVector, resultTransitionMatrices, test, len)) {
 				return false;
-			} else if (inMinimize && M2MA.MQArbitrary(M2MA.inputFinalVector, M2MA.inputTransitionMatrices, test) != M2MA.MQArbitrary(M2MA.minFinalVector, M2MA.minTransitionMatrices, test)) {
+			} else if (inMinimize && M2MA.MQArbitrary(M2MA.inputFinalVector, inputTransitions, test, len) != M2MA.MQArbitrary(M2MA.minFinalVector, M2MA.minTransitionMatrices, test, len)) {
 				return false;
 			}
 		}
@@ -1052,35 +1520,32 @@ public class M2MA {
 	// The number of states of the minimal DFA is the number of reachable states of the minimized M2MA.
 	// Uses sparse ArrayLists instead of the HashMap representation for the tests to avoid out of memory issues.
 	public static int dimensionMinDFA(boolean minAutomata) throws Exception {
-		HashMap<Integer, ArrayList<Integer>> orderedColSets = obtainColumnSets(minAutomata);
+		HashMap<Integer, ArrayList<Integer>>[] transitionMatrices = minAutomata ? minTransitionMatrices : resultTransitionMatrices;
+		int dimension = transitionMatrices[0].get(0).get(0);
+		IntFunction<int[]> stackedTransitions = new sparseTransitions(transitionMatrices, dimension).stacked(true);
 		
 		HashSet<ArrayList<Integer>> reachable = new HashSet<ArrayList<Integer>>();
 		int sizeReachable = 0;
 		
-		ArrayList<ArrayList<Integer>> tests = new ArrayList<ArrayList<Integer>>();
+		ArrayDeque<ArrayList<Integer>> tests = new ArrayDeque<ArrayList<Integer>>();
 		
 		// begin with ω_i = (1,0,0,...,0)
 		ArrayList<Integer> w_i = new ArrayList<Integer>();
 		w_i.add(1);
 		tests.add(w_i);
-		int numTests = 1;
 		
-		while (numTests > 0) {
-			ArrayList<Integer> test = tests.remove(0);
-			numTests--;
+		while (!tests.isEmpty()) {
+			ArrayList<Integer> test = tests.poll();
 			
 			if (!reachable.contains(test)) {
 				reachable.add(test);
 				sizeReachable++;
 				
 				// add to tests the one-letter extensions of test
-				for (int i=0; i<alphabet.length; i++) {
-					if (minAutomata) {
-						tests.add(multiplyDimensionMinDFA(test, minTransitionMatrices[i], orderedColSets.get(i)));
-					} else {
-						tests.add(multiplyDimensionMinDFA(test, resultTransitionMatrices[i], orderedColSets.get(i)));
+				for (ArrayList<Integer> newTest : extendVector(test, stackedTransitions, dimension, alphabet.length)) {
+					if (!reachable.contains(newTest)) {
+						tests.add(newTest);
 					}
-					numTests++;
 				}
 			}
 		}
@@ -1088,56 +1553,6 @@ public class M2MA {
 		return sizeReachable;
 	}
 	
-	public static HashMap<Integer, ArrayList<Integer>> obtainColumnSets(boolean minAutomata) {
-		HashMap<Integer, ArrayList<Integer>> orderedColSets = new HashMap<Integer, ArrayList<Integer>>();
-		
-		for (int i = 0; i < alphabet.length; i++) {
-			ArrayList<Integer> colSet = new ArrayList<Integer>();
-			int prevMax = 0;
-			boolean needsSorting = false;
-			
-			HashMap<Integer, ArrayList<Integer>> transitionMatrix;
-			
-			if (minAutomata) {
-				transitionMatrix = minTransitionMatrices[i];
-			} else {
-				transitionMatrix = resultTransitionMatrices[i];
-			}
-			
-			for (int c : transitionMatrix.keySet()) {
-				if (c < 0) {
-					colSet.add(c);
-					
-					if (!needsSorting && c > prevMax) {
-						needsSorting = true;
-					}
-					
-					prevMax = c;
-				}
-			}
-			
-			if (needsSorting) {
-				Collections.sort(colSet);
-			}
-			
-			orderedColSets.put(i, colSet);
-		}
-		
-		return orderedColSets;
-	}
-	
-	public static ArrayList<Integer> multiplyDimensionMinDFA(ArrayList<Integer> test, HashMap<Integer, ArrayList<Integer>> transitionMatrix, ArrayList<Integer> colSet) {
-		ArrayList<Integer> out = new ArrayList<Integer>();
-		
-		for (int c : colSet) {
-			if (dotProduct(test, transitionMatrix.get(c)) == 1) {
-				out.add(-1*c);
-			}
-		}
-		
-		return out;
-	}
-	
 	public static void displayRuntime() {
 		long endTime = System.nanoTime();
 		double totalTime = (endTime - startTime) / Math.pow(10, 9);
@@ -1281,6 +1696,103 @@ public class M2MA {
 		return out;
 	}
 	
+	/*
+	 * Multiplies a sparse mxn matrix by a sparse nxp matrix like multiply, but splits the rows of the product into
+	 * blocks that are computed in parallel. The blocks are merged in order, so the result is identical to multiply.
+	 */
+	public static HashMap<Integer, ArrayList<Integer>> multiplyParallel(HashMap<Integer, ArrayList<Integer>> arr1, HashMap<Integer, ArrayList<Integer>> arr2) throws Exception {
+		if ((int) arr1.get(0).get(1) != (int) arr2.get(0).get(0)) {
+			throwException(null, "Multiplied matrices of invalid dimension.");
+		}
+		
+		ArrayList<Integer> rowSet = new ArrayList<Integer>();
+		for (int r : arr1.keySet()) {
+			if (r > 0) {
+				rowSet.add(r);
+			}
+		}
+		
+		int blockSize = Math.max(BLOCK_ROWS, (rowSet.size() + 4*numThreads - 1) / (4*numThreads));
+		if (numThreads == 1 || rowSet.size() <= blockSize) {
+			return multiply(arr1, arr2);
+		}
+		
+		ArrayList<Integer> colSet = new ArrayList<Integer>();
+		for (int c : arr2.keySet()) {
+			if (c < 0) {
+				colSet.add(c);
+			}
+		}
+		
+		// every block returns the columns of the nonzero entries of each of its rows
+		ArrayList<Future<ArrayList<ArrayList<Integer>>>> blocks = new ArrayList<Future<ArrayList<ArrayList<Integer>>>>();
+		for (int start=0; start<rowSet.size(); start+=blockSize) {
+			int blockStart = start;
+			int blockEnd = Math.min(start + blockSize, rowSet.size());
+			blocks.add(submit(() -> {
+				ArrayList<ArrayList<Integer>> blockRows = new ArrayList<ArrayList<Integer>>();
+				for (int i=blockStart; i<blockEnd; i++) {
+					HashSet<Integer> row = new HashSet<Integer>(arr1.get(rowSet.get(i)));
+					ArrayList<Integer> outRow = new ArrayList<Integer>();
+					for (int c : colSet) {
+						int count = 0;
+						for (int n : arr2.get(c)) {
+							if (row.contains(n)) {
+								count++;
+							}
+						}
+						if (count % 2 == 1) {
+							outRow.add(c * -1);
+						}
+					}
+					blockRows.add(outRow);
+				}
+				return blockRows;
+			}));
+		}
+		
+		HashMap<Integer, ArrayList<Integer>> out = initialize(arr1.get(0).get(0), arr2.get(0).get(1));
+		int i = 0;
+		for (Future<ArrayList<ArrayList<Integer>>> block : blocks) {
+			for (ArrayList<Integer> outRow : join(block)) {
+				int r = rowSet.get(i++);
+				for (int c : outRow) {
+					addElement(out, r, c);
+				}
+			}
+		}
+		
+		return out;
+	}
+	
+	// runs task on the thread pool of minimize, or immediately if it only has one thread
+	public static <T> Future<T> submit(Callable<T> task) {
+		if (numThreads == 1) {
+			FutureTask<T> future = new FutureTask<T>(task);
+			future.run();
+			return future;
+		}
+		
+		synchronized (M2MA.class) {
+			if (pool == null) {
+				pool = new ForkJoinPool(numThreads);
+			}
+		}
+		return pool.submit(task);
+	}
+	
+	// returns the result of a task, rethrowing the exception thrown by the task
+	public static <T> T join(Future<T> task) throws Exception {
+		try {
+			return task.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+	}
+	
 	// returns the dot product of two sparse vectors
 	public static int dotProduct(ArrayList<Integer> v1, ArrayList<Integer> v2) {
 		if (v1 == null || v2 == null) {
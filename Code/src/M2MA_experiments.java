@@ -1,6 +1,7 @@
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Scanner;
+import java.util.SplittableRandom;
 
 public class M2MA_experiments {
 	
@@ -35,6 +36,7 @@ public class M2MA_experiments {
 			M2MA.letterToIndex.put(M2MA.alphabet[i], i);
 		}
 		
+		wordGenerator random = wordGenerator.shared();
 		for (int dim = minDim; dim <= maxDim; dim += dimIncrement) {
 			M2MA.inputSize = dim;
 			double sumRuntimes = 0;
@@ -43,7 +45,7 @@ public class M2MA_experiments {
 				// initialize M2MA parameters
 				M2MA.inputFinalVector = M2MA.initialize(1, M2MA.inputSize);
 				for (int j = 1; j <= M2MA.inputSize; j++) {
-					if (Math.random() < .5) {
+					if (random.nextInt(2) == 1) {
 						M2MA.addElement(M2MA.inputFinalVector, 1, j);
 					}
 				}
@@ -54,7 +56,7 @@ public class M2MA_experiments {
 					
 					for (int k = 1; k <= M2MA.inputSize; k++) {
 						for (int l = 1; l <= M2MA.inputSize; l++) {
-							if (Math.random() < .5) {
+							if (random.nextInt(2) == 1) {
 								M2MA.addElement(transitionMatrix, k, l);
 							}
 						}
@@ -108,6 +110,16 @@ public class M2MA_experiments {
 		
 		System.out.println("Enter the number of M2MAs to learn for each dimension.");
 		numM2MAs = Integer.parseInt(scan.nextLine());
+		
+		// the same seed regenerates the same random M2MAs and tests
+		System.out.println("Enter the random seed (leave blank for a random seed).");
+		String seed = scan.nextLine().trim();
+		if (seed.length() != 0) {
+			wordGenerator.setSeed(Long.parseLong(seed));
+		} else {
+			wordGenerator.setSeed(new SplittableRandom().nextLong());
+		}
+		System.out.println("Using random seed " + wordGenerator.seed + ".");
 		scan.close();
 		
 		System.out.println("\n----------------------------\n");
@@ -7,7 +7,10 @@
  */
 
 import java.io.BufferedReader;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.StringTokenizer;
 
@@ -20,8 +23,13 @@ public class SUBA {
 	
 	// UFA
 	public static int UFAStates;
-	public static boolean[][][] UFATransitions;
+	public static HashMap<Integer, ArrayList<Integer>>[] UFATransitions;
 	public static boolean[] UFAFinalStates;
+	
+	// MQ_SUBA: SUBATransitions as arrays, the final states as a bitset, and the sets reused between calls
+	private static int[][][] MQSuccessors;
+	private static long[] MQFinal;
+	private static long[] MQReachable, MQNext, MQNotPassed, MQPassed;
 
 	public static void main(String[] args) throws Exception {		
 		System.out.println("Program Description:");
@@ -33,15 +41,20 @@ public class SUBA {
 		
 		SUBAtoUFA();
 		
-		UFAtoMod2MA();
-
-		M2MA.minimize();
-		
-		M2MA.learn();
-		
-		if (M2MA.minSize != M2MA.learnedSize) {
-			M2MA.throwException(null, "Algorithm failed: the learned mod-2-MA has a different dimension "
-					+ "(" + M2MA.learnedSize + ") than the minimized mod-2-MA (" + M2MA.minSize + ").");
+		if (subaOracle.enabled) {
+			// the SUBA answers the queries, so the UFA is neither formed nor minimized
+			M2MA.learn();
+		} else {
+			UFAtoMod2MA();
+			
+			M2MA.minimize();
+			
+			M2MA.learn();
+			
+			if (M2MA.minSize != M2MA.learnedSize) {
+				M2MA.throwException(null, "Algorithm failed: the learned mod-2-MA has a different dimension "
+						+ "(" + M2MA.learnedSize + ") than the minimized mod-2-MA (" + M2MA.minSize + ").");
+			}
 		}
 		
 		if (finalCheck(25,1000)) {
@@ -93,8 +106,8 @@ public class SUBA {
 		 * - all transitions of the form ((q,p,i),a,(q,p',i')), where (p,a,p')∈SUBATransitions, and
 		 * 	 i' = 1 if p'∈SUBAFinalStates and i if p'∉SUBAFinalStates
 		 * 
-		 * Transitions will be stored in a (UFAStates x alphabetSize x UFAStates) adjacency matrix.
-		 * The first states of UFATransitions will be SUBAStates.
+		 * Transitions will be stored in one sparse (UFAStates x UFAStates) matrix per letter, which are written while
+		 * the SUBA transitions are read. The first states of UFATransitions will be SUBAStates.
 		 * The remaining states will be of the form (q_j,q_k,i), where q_j,q_k∈SUBAStates and i∈{0,1}.
 		 * State (q_j,q_k,i) will be found at index (2*SUBAStates*j)+(2*k)-(SUBAStates)+(i-1) of UFATransitions.
 		*/
@@ -115,8 +128,8 @@ public class SUBA {
 			}
 		}
 		
-		// (start state, letter, end state)
-		UFATransitions = new boolean[UFAStates + 1][M2MA.alphabet.length][UFAStates + 1];
+		// (start state, letter, end state), only the SUBA transitions are needed for the structured UFA
+		initializeUFATransitions();
 		
 		// lines of the form q_j a q_k, where q_j,q_k∈SUBAStates and a∈alphabet
 		for (int i=0; i<numTransitions; i++) {
@@ -131,36 +144,16 @@ public class SUBA {
 				M2MA.throwException(f, "Invalid input: invalid transition.");
 			}
 			
-			// SUBATransitions ⊆ UFATransitions 
-			SUBATransitions[p_start][a].add(p_end);
-			UFATransitions[p_start][a][p_end] = true;
-			
-			// transitions of the form ((q,p,i),a,(q,p',i'))
-			// p'∈SUBAFinalStates so i'=1
-			if (SUBAFinalStates[p_end]) {
-				for (int q=1; q<=SUBAStates; q++) {
-					// ((q,p,0),a,(q,p',1))
-					UFATransitions[getIndex(q, p_start, 0)][a][getIndex(q, p_end, 1)] = true;
-					// ((q,p,1),a,(q,p',1))
-					UFATransitions[getIndex(q, p_start, 1)][a][getIndex(q, p_end, 1)] = true;
-				}
-			}
-			// p'∉SUBAFinalStates so i'=i
-			else {
-				for (int q=1; q<=SUBAStates; q++) {
-					// ((q,p,0),a,(q,p',0))
-					UFATransitions[getIndex(q, p_start, 0)][a][getIndex(q, p_end, 0)] = true;
-					// ((q,p,1),a,(q,p',1))
-					UFATransitions[getIndex(q, p_start, 1)][a][getIndex(q, p_end, 1)] = true;
-				}
-			}
+			addTransition(p_start, a, p_end);
 		}
 		
 		// transitions for the UFA of the form (q,$,(q,q,0)), where q∈SUBAStates
 		// final states for the UFA of the form (q,q,1), where q∈SUBAStates
 		UFAFinalStates = new boolean[UFAStates+1];
 		for (int q=1; q<=SUBAStates; q++) {
-			UFATransitions[q][M2MA.letterToIndex.get("$")][getIndex(q, q, 0)] = true;
+			if (sparseUFA()) {
+				M2MA.addElement(UFATransitions[M2MA.letterToIndex.get("$")], q, getIndex(q, q, 0));
+			}
 			UFAFinalStates[getIndex(q, q, 1)] = true;
 		}
 		
@@ -173,116 +166,356 @@ public class SUBA {
 		}
 	}
 	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public static void initializeUFATransitions() {
+		// MQ_SUBA copies the transitions of the new SUBA when it is first called
+		MQSuccessors = null;
+		
+		if (!sparseUFA()) {
+			UFATransitions = null;
+			return;
+		}
+		UFATransitions = new HashMap[M2MA.alphabet.length];
+		for (int a=0; a<M2MA.alphabet.length; a++) {
+			UFATransitions[a] = M2MA.initialize(UFAStates, UFAStates);
+		}
+	}
+	
+	// adds (p_start,a,p_end) to SUBATransitions and the transitions of the UFA that it induces
+	public static void addTransition(int p_start, int a, int p_end) throws Exception {
+		// a transition listed twice is a single transition
+		if (SUBATransitions[p_start][a].contains(p_end)) {
+			return;
+		}
+		SUBATransitions[p_start][a].add(p_end);
+		if (!sparseUFA()) {
+			return;
+		}
+		
+		// SUBATransitions ⊆ UFATransitions 
+		M2MA.addElement(UFATransitions[a], p_start, p_end);
+		
+		// transitions of the form ((q,p,i),a,(q,p',i')), where i' = 1 if p'∈SUBAFinalStates and i if p'∉SUBAFinalStates
+		for (int q=1; q<=SUBAStates; q++) {
+			M2MA.addElement(UFATransitions[a], getIndex(q, p_start, 0), getIndex(q, p_end, SUBAFinalStates[p_end] ? 1 : 0));
+			M2MA.addElement(UFATransitions[a], getIndex(q, p_start, 1), getIndex(q, p_end, 1));
+		}
+	}
+	
+	// the UFA is formed as sparse matrices unless it is kept in its structured form or the SUBA answers the queries
+	public static boolean sparseUFA() {
+		return !kroneckerUFA.enabled && !subaOracle.enabled;
+	}
+	
 	public static int getIndex(int j, int k, int i) {
 		return (2 * SUBAStates * j) + (2 * k) - SUBAStates + i - 1;
 	}
 
 	@SuppressWarnings("unchecked")
 	public static void UFAtoMod2MA() throws Exception {
-		// the size of the target function equals the number of states in the UFA
-		M2MA.inputSize = UFAStates;
+		if (kroneckerUFA.enabled) {
+			structuredUFAtoMod2MA();
+			return;
+		}
+		kroneckerUFA.input = null;
+		
+		// the transitions were added in the order of the input, the rows and columns of a sparse matrix are sorted
+		for (int i=0; i<M2MA.alphabet.length; i++) {
+			for (int key : UFATransitions[i].keySet()) {
+				if (key != 0) {
+					Collections.sort(UFATransitions[i].get(key));
+				}
+			}
+		}
+		
+		// only the states of the UFA that are reachable from q_1 and can reach a final state are kept
+		int[] trimmedIndex = trimUFA();
+		
+		// the size of the target function equals the number of states kept in the UFA
+		M2MA.inputSize = 0;
+		for (int j=1; j<=UFAStates; j++) {
+			if (trimmedIndex[j] != 0) {
+				M2MA.inputSize++;
+			}
+		}
+		
+		if ((M2MA.minProgressFlag || M2MA.minDimensionFlag) && convert.results == null) {
+			System.out.println("Trimmed the UFA from " + UFAStates + " to " + M2MA.inputSize + " states.");
+		}
 		
 		// inputFinalVector is the characteristic vector of UFAFinalStates
 		M2MA.inputFinalVector = M2MA.initialize(1, M2MA.inputSize);
 		for (int i=1; i<=UFAStates; i++) {
-			if(UFAFinalStates[i]) {
-				M2MA.addElement(M2MA.inputFinalVector, 1, i);
+			if (UFAFinalStates[i] && trimmedIndex[i] != 0) {
+				M2MA.addElement(M2MA.inputFinalVector, 1, trimmedIndex[i]);
 			}
 		}
 		
 		// for each letter in the alphabet, [transitionMatrix_letter]i,j = 1 iff (q_i,letter,q_j)∈UFATransitions
+		if (M2MA.inputSize == UFAStates) {
+			M2MA.inputTransitionMatrices = UFATransitions;
+			return;
+		}
 		M2MA.inputTransitionMatrices = new HashMap[M2MA.alphabet.length];
 		for (int i=0; i<M2MA.alphabet.length; i++) {
 			M2MA.inputTransitionMatrices[i] = M2MA.initialize(M2MA.inputSize, M2MA.inputSize);
 			
-			for (int j=1; j<=M2MA.inputSize; j++) {
-				for (int k=1; k<=M2MA.inputSize; k++) {
-					if (UFATransitions[j][i][k]) {
-						M2MA.addElement(M2MA.inputTransitionMatrices[i], j, k);
+			for (int j=1; j<=UFAStates; j++) {
+				ArrayList<Integer> row = UFATransitions[i].get(j);
+				if (trimmedIndex[j] == 0 || row == null) {
+					continue;
+				}
+				for (int k : row) {
+					if (trimmedIndex[k] != 0) {
+						M2MA.addElement(M2MA.inputTransitionMatrices[i], trimmedIndex[j], trimmedIndex[k]);
 					}
 				}
 			}
 		}
 	}
 	
-	public static boolean MQ_SUBA(String u, String v, int curState, boolean passedFinal, int q_u) {
-		/* 
-		 * From Bosquet and Löding, u(v)^ω is accepted by the SUBA iff there is a state q∈SUBAStates such that
-		 * q_1 (read u) -> q (read v and pass by a final state) -> q.
-		 */
+	/*
+	 * Keeps the UFA in its Kronecker structure, so that M2MA.inputTransitionMatrices is null and minimize() uses
+	 * kroneckerUFA.input. A deterministic UFA has as many transitions as states per letter, so its transition matrices
+	 * are formed instead, and minimize() reduces it by partition refinement first.
+	 */
+	public static void structuredUFAtoMod2MA() throws Exception {
+		kroneckerUFA.input = new kroneckerUFA(SUBAStates, SUBATransitions, SUBAFinalStates);
+		M2MA.inputSize = kroneckerUFA.input.size;
 		
-		// read u
-		if (u.length() != 0) {
-			String[] uArr = u.split(" ");
-			// look at the first character of u
-			String c = uArr[0];
-			
-			// check all possible states reachable from (curState, c)
-			for (int i=0; i<SUBATransitions[curState][M2MA.letterToIndex.get(c)].size(); i++) {
-				int newState = SUBATransitions[curState][M2MA.letterToIndex.get(c)].get(i);
-				
-				if (uArr.length == 1) {
-					// ready to read v
-					if (MQ_SUBA("", v, newState, false, newState)) {
-						return true;
+		if ((M2MA.minProgressFlag || M2MA.minDimensionFlag) && convert.results == null) {
+			System.out.println("Trimmed the UFA from " + UFAStates + " to " + M2MA.inputSize + " states.");
+		}
+		
+		M2MA.inputFinalVector = kroneckerUFA.input.finalVector();
+		M2MA.inputTransitionMatrices = null;
+		if (kroneckerUFA.input.isDeterministic()) {
+			M2MA.inputTransitionMatrices = kroneckerUFA.input.toSparse();
+			kroneckerUFA.input = null;
+		}
+	}
+	
+	/*
+	 * Returns the index of every state of the UFA after removing the states that are unreachable from q_1 or cannot
+	 * reach a final state, or 0 for a removed state. No accepting run passes through a removed state, so the UFA
+	 * accepts the same words. The remaining states keep their order, so q_1 stays the initial state, and q_1 is kept
+	 * even if it cannot reach a final state.
+	 */
+	public static int[] trimUFA() {
+		// the successors of a state are the rows of UFATransitions, and its predecessors are the columns
+		boolean[] reachable = new boolean[UFAStates + 1];
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+		reachable[1] = true;
+		queue.add(1);
+		while (!queue.isEmpty()) {
+			int j = queue.poll();
+			for (int i=0; i<M2MA.alphabet.length; i++) {
+				if (UFATransitions[i].get(j) == null) {
+					continue;
+				}
+				for (int k : UFATransitions[i].get(j)) {
+					if (!reachable[k]) {
+						reachable[k] = true;
+						queue.add(k);
 					}
-				} else if (MQ_SUBA(u.substring(Math.min(c.length()+1, u.length())), v, newState, false, q_u)) {
-					// more left to read in u
-					return true;
 				}
 			}
-			
-			// no successful transitions from a letter in u
+		}
+		
+		boolean[] coReachable = new boolean[UFAStates + 1];
+		for (int j=1; j<=UFAStates; j++) {
+			if (UFAFinalStates[j]) {
+				coReachable[j] = true;
+				queue.add(j);
+			}
+		}
+		while (!queue.isEmpty()) {
+			int j = queue.poll();
+			for (int i=0; i<M2MA.alphabet.length; i++) {
+				if (UFATransitions[i].get(j * -1) == null) {
+					continue;
+				}
+				for (int k : UFATransitions[i].get(j * -1)) {
+					if (!coReachable[k]) {
+						coReachable[k] = true;
+						queue.add(k);
+					}
+				}
+			}
+		}
+		
+		int[] trimmedIndex = new int[UFAStates + 1];
+		int size = 0;
+		for (int j=1; j<=UFAStates; j++) {
+			if (j == 1 || (reachable[j] && coReachable[j])) {
+				trimmedIndex[j] = ++size;
+			}
+		}
+		return trimmedIndex;
+	}
+	
+	// returns true if u(v)^ω is accepted by the SUBA, where u and v are words with space-separated letters
+	public static boolean MQ_SUBA(String u, String v) {
+		return MQ_SUBA(toLetters(u), toLetters(v));
+	}
+	
+	/*
+	 * From Bosquet and Löding, u(v)^ω is accepted by the SUBA iff there is a state q∈SUBAStates such that
+	 * q_1 (read u) -> q (read v and pass by a final state) -> q.
+	 * 
+	 * The states reachable by u are computed as one set, then v is read once from every such q over the pairs
+	 * (state, passed a final state), so that the evaluation takes O((|u|+n*|v|)*(number of transitions)) time
+	 * instead of following every run. The words are arrays of letter indices, and the sets are kept in bitsets
+	 * that are reused between calls.
+	 */
+	public static boolean MQ_SUBA(int[] u, int[] v) {
+		return MQ_SUBA(u, 0, u.length, v, 0, v.length);
+	}
+	
+	// returns true if u$v is accepted, where u and v are the ranges before and after dollarIndex of the first len letters
+	public static boolean MQ_SUBA(int[] word, int dollarIndex, int len) {
+		return MQ_SUBA(word, 0, dollarIndex, word, dollarIndex + 1, len);
+	}
+	
+	// u = u[uFrom, uTo) and v = v[vFrom, vTo)
+	private static boolean MQ_SUBA(int[] u, int uFrom, int uTo, int[] v, int vFrom, int vTo) {
+		if (MQSuccessors == null) {
+			initializeMQ();
+		}
+		
+		// states reachable from q_1 by reading u
+		long[] reachable = MQReachable;
+		Arrays.fill(reachable, 0);
+		reachable[0] = 1L << 1;
+		for (int i=uFrom; i<uTo; i++) {
+			step(reachable, MQNext, u[i]);
+			long[] swap = reachable;
+			reachable = MQNext;
+			MQNext = swap;
+		}
+		
+		if (vFrom == vTo) {
+			MQReachable = reachable;
 			return false;
-		} else {
-			// read v
+		}
+		
+		boolean accepted = false;
+		for (int q=nextState(reachable, 0); q!=-1 && !accepted; q=nextState(reachable, q + 1)) {
+			// notPassed and passed are the states reached by a prefix of v from q without and with a final state
+			long[] notPassed = MQNotPassed;
+			long[] passed = MQPassed;
+			Arrays.fill(notPassed, 0);
+			Arrays.fill(passed, 0);
+			notPassed[q >> 6] = 1L << (q & 63);
 			
-			// finished reading v
-			if (v.length() == 0) {
-				// for u(v)^ω to be accepted, must be at state q_u and passed a final state
-				if (passedFinal && (curState == q_u)) {
-					return true;
+			for (int i=vFrom; i<vTo; i++) {
+				int letter = v[i];
+				// a final state is passed when it is left
+				for (int k=0; k<notPassed.length; k++) {
+					passed[k] |= notPassed[k] & MQFinal[k];
+					notPassed[k] &= ~MQFinal[k];
 				}
-				return false;
+				
+				step(notPassed, MQNext, letter);
+				long[] swap = notPassed;
+				notPassed = MQNext;
+				MQNext = swap;
+				
+				step(passed, MQNext, letter);
+				swap = passed;
+				passed = MQNext;
+				MQNext = swap;
 			}
 			
-			// reached a final state
-			if (SUBAFinalStates[curState]) {
-				passedFinal = true;
+			accepted = (passed[q >> 6] & (1L << (q & 63))) != 0;
+			MQNotPassed = notPassed;
+			MQPassed = passed;
+		}
+		
+		MQReachable = reachable;
+		return accepted;
+	}
+	
+	// returns the letter indices of a word with space-separated letters
+	public static int[] toLetters(String word) {
+		if (word.length() == 0) {
+			return new int[0];
+		}
+		String[] wordArr = word.split(" ");
+		int[] letters = new int[wordArr.length];
+		for (int i=0; i<wordArr.length; i++) {
+			letters[i] = M2MA.letterToIndex.get(wordArr[i]);
+		}
+		return letters;
+	}
+	
+	// sets next to the states reached from the states in current by letter
+	private static void step(long[] current, long[] next, int letter) {
+		Arrays.fill(next, 0);
+		for (int p=nextState(current, 0); p!=-1; p=nextState(current, p + 1)) {
+			for (int p_end : MQSuccessors[p][letter]) {
+				next[p_end >> 6] |= 1L << (p_end & 63);
 			}
-			
-			String[] vArr = v.split(" ");
-			
-			// look at the first character of v
-			String c = vArr[0];
-			
-			// check all possible states reachable from (curState, c)
-			for (int i=0; i<SUBATransitions[curState][M2MA.letterToIndex.get(c)].size(); i++) {
-				int newState = SUBATransitions[curState][M2MA.letterToIndex.get(c)].get(i);
-				if (MQ_SUBA("", v.substring(Math.min(c.length() + 1, v.length())), newState, passedFinal, q_u)) {
-					return true;
+		}
+	}
+	
+	// returns the first state of the set at or after from, or -1
+	private static int nextState(long[] set, int from) {
+		int k = from >> 6;
+		if (k >= set.length) {
+			return -1;
+		}
+		long word = set[k] & (-1L << (from & 63));
+		while (word == 0) {
+			if (++k == set.length) {
+				return -1;
+			}
+			word = set[k];
+		}
+		return (k << 6) + Long.numberOfTrailingZeros(word);
+	}
+	
+	// copies SUBATransitions into arrays and allocates the sets used by MQ_SUBA
+	private static void initializeMQ() {
+		int words = (SUBAStates + 64) / 64;
+		MQSuccessors = new int[SUBAStates + 1][M2MA.alphabet.length - 1][];
+		MQFinal = new long[words];
+		for (int p=1; p<=SUBAStates; p++) {
+			for (int a=0; a<M2MA.alphabet.length-1; a++) {
+				MQSuccessors[p][a] = new int[SUBATransitions[p][a].size()];
+				for (int i=0; i<MQSuccessors[p][a].length; i++) {
+					MQSuccessors[p][a][i] = SUBATransitions[p][a].get(i);
 				}
 			}
-			return false;
+			if (SUBAFinalStates[p]) {
+				MQFinal[p >> 6] |= 1L << (p & 63);
+			}
 		}
+		MQReachable = new long[words];
+		MQNext = new long[words];
+		MQNotPassed = new long[words];
+		MQPassed = new long[words];
 	}
 	
 	// performs a statistical EQ between the input SUBA and learned mod-2-MA
 	public static boolean finalCheck(int maxTestLen, int numTests) throws Exception {		
+		wordGenerator random = wordGenerator.shared();
+		int dollar = M2MA.letterToIndex.get("$");
 		for (int i=1; i<=numTests; i++) {
-			// SUBA: ultimately periodic words of the form u(v)^w
-			int lenU = (int) (Math.random() * (maxTestLen + 1));
-			int lenV = (int) (Math.random() * (maxTestLen - lenU + 1));
-			String u = M2MA.genTest(lenU, true);
-			String v = M2MA.genTest(lenV, true);
-			boolean SUBA_accepts = MQ_SUBA(u, v, 1, false, 1);
+			// SUBA: ultimately periodic words of the form u(v)^w, where the length is split between u and a nonempty v
+			int len = Math.max(1, random.nextLength(maxTestLen));
+			int lenV = 1 + random.nextInt(len);
+			int lenU = len - lenV;
+			int[] test = random.next(len + 1, M2MA.alphabet.length - 1);
+			test[lenU] = dollar;
+			boolean SUBA_accepts = MQ_SUBA(test, lenU, len + 1);
 			
 			// mod-2-MA: words of the form u$v
-			int mod2_MA_accepts = M2MA.MQArbitrary(M2MA.resultFinalVector, M2MA.resultTransitionMatrices, M2MA.addStrings(M2MA.addStrings(u, "$"), v));
+			int mod2_MA_accepts = M2MA.MQArbitrary(M2MA.resultFinalVector, M2MA.resultTransitionMatrices, test, len + 1);
 			
 			if ((SUBA_accepts && mod2_MA_accepts == 0) || (!SUBA_accepts && mod2_MA_accepts == 1)) {
-				System.out.println("u: " + u);
-				System.out.println("v: " + v);
+				System.out.println("u: " + wordGenerator.toWord(test, lenU));
+				System.out.println("v: " + wordGenerator.toWord(Arrays.copyOfRange(test, lenU + 1, len + 1), lenV));
 				System.out.println("SUBA_accepts: " + SUBA_accepts);
 				return false;
 			}
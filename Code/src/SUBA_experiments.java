@@ -85,8 +85,8 @@ public class SUBA_experiments {
 		 * - all transitions of the form ((q,p,i),a,(q,p',i')), where (p,a,p')∈SUBATransitions, and
 		 * 	 i' = 1 if p'∈SUBAFinalStates and i if p'∉SUBAFinalStates
 		 * 
-		 * Transitions will be stored in a (UFAStates x alphabetSize x UFAStates) adjacency matrix.
-		 * The first states of UFATransitions will be SUBAStates.
+		 * Transitions will be stored in one sparse (UFAStates x UFAStates) matrix per letter, which are written while
+		 * the SUBA transitions are read. The first states of UFATransitions will be SUBAStates.
 		 * The remaining states will be of the form (q_j,q_k,i), where q_j,q_k∈SUBAStates and i∈{0,1}.
 		 * State (q_j,q_k,i) will be found at index (2*SUBAStates*j)+(2*k)-(SUBAStates)+(i-1) of UFATransitions.
 		*/
@@ -108,7 +108,7 @@ public class SUBA_experiments {
 		}
 		
 		// (start state, letter, end state)
-		SUBA.UFATransitions = new boolean[SUBA.UFAStates + 1][M2MA.alphabet.length][SUBA.UFAStates + 1];
+		SUBA.initializeUFATransitions();
 		
 		// lines of the form q_j a q_k, where q_j,q_k∈SUBAStates and a∈alphabet
 		for (int i=0; i<numTransitions; i++) {
@@ -123,36 +123,16 @@ public class SUBA_experiments {
 				M2MA.throwException(f, "Invalid input: invalid transition.");
 			}
 			
-			// SUBATransitions ⊆ UFATransitions 
-			SUBA.SUBATransitions[p_start][a].add(p_end);
-			SUBA.UFATransitions[p_start][a][p_end] = true;
-			
-			// transitions of the form ((q,p,i),a,(q,p',i'))
-			// p'∈SUBAFinalStates so i'=1
-			if (SUBA.SUBAFinalStates[p_end]) {
-				for (int q=1; q<=SUBA.SUBAStates; q++) {
-					// ((q,p,0),a,(q,p',1))
-					SUBA.UFATransitions[SUBA.getIndex(q, p_start, 0)][a][SUBA.getIndex(q, p_end, 1)] = true;
-					// ((q,p,1),a,(q,p',1))
-					SUBA.UFATransitions[SUBA.getIndex(q, p_start, 1)][a][SUBA.getIndex(q, p_end, 1)] = true;
-				}
-			}
-			// p'∉SUBAFinalStates so i'=i
-			else {
-				for (int q=1; q<=SUBA.SUBAStates; q++) {
-					// ((q,p,0),a,(q,p',0))
-					SUBA.UFATransitions[SUBA.getIndex(q, p_start, 0)][a][SUBA.getIndex(q, p_end, 0)] = true;
-					// ((q,p,1),a,(q,p',1))
-					SUBA.UFATransitions[SUBA.getIndex(q, p_start, 1)][a][SUBA.getIndex(q, p_end, 1)] = true;
-				}
-			}
+			SUBA.addTransition(p_start, a, p_end);
 		}
 		
 		// transitions for the UFA of the form (q,$,(q,q,0)), where q∈SUBAStates
 		// final states for the UFA of the form (q,q,1), where q∈SUBAStates
 		SUBA.UFAFinalStates = new boolean[SUBA.UFAStates+1];
 		for (int q=1; q<=SUBA.SUBAStates; q++) {
-			SUBA.UFATransitions[q][M2MA.letterToIndex.get("$")][SUBA.getIndex(q, q, 0)] = true;
+			if (SUBA.sparseUFA()) {
+				M2MA.addElement(SUBA.UFATransitions[M2MA.letterToIndex.get("$")], q, SUBA.getIndex(q, q, 0));
+			}
 			SUBA.UFAFinalStates[SUBA.getIndex(q, q, 1)] = true;
 		}
 		
@@ -65,22 +65,29 @@ public class arbitrary {
 	// approximate equivalence query using a given number of randomly generated tests of some max length
 	public static boolean EQstatistical(HashMap<Integer, ArrayList<Integer>> hypothesisFinalVector, HashMap<Integer, ArrayList<Integer>>[] hypothesisTransitionMatrices) throws Exception {
 		int numFail = 0;
+		M2MA.clearCounterExamples();
+		wordGenerator random = wordGenerator.shared();
 		for (int i=0; i<EQNumTests; i++) {
-			String test = M2MA.genTest((int) (Math.random() * (EQMaxTestLen + 1)), false);
+			String test = M2MA.genTest(random.nextLength(EQMaxTestLen), false);
 			
 			if (M2MA.MQ(test) != M2MA.MQArbitrary(hypothesisFinalVector, hypothesisTransitionMatrices, test)) {
 				// found a counter-example
 				// count the number of counter-examples
 				if (EQNumPerformed == EQLimit-1) {
 					numFail++;
-				} else {
+				} else if (M2MA.addCounterExample(test)) {
 					EQNumPerformed++;
-					M2MA.counterExample = test;
 					return false;
 				}
 			}
 		}
 		
+		// returns the counter-examples found before running out of tests
+		if (M2MA.counterExamples.size() != 0) {
+			EQNumPerformed++;
+			return false;
+		}
+		
 		// performs EQlimit equivalence queries
 		if (EQNumPerformed == EQLimit-1 && numFail != 0) {
 			M2MA.resultFinalVector = hypothesisFinalVector;
@@ -0,0 +1,177 @@
+/*
+ * Author: Nevin George
+ * Advisor: Dana Angluin
+ * Program Description: Saves and restores the state of the learning algorithm in M2MA.java, so that a long run can
+ * be resumed after a crash without redoing any membership queries. A checkpoint contains the row and column indices
+ * of the observation table, every answered membership query, the MQ and EQ counters, the number of rounds, and the
+ * state of the random tests.
+ */
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class checkpoint {
+
+	// identifies checkpoint files
+	public static final int MAGIC = 0x4D324D41;
+
+	// a checkpoint is written every interval rounds of the learning algorithm (0 to never write one)
+	public static int interval = 0;
+	// true if the learning algorithm resumes from the checkpoint in fileName
+	public static boolean resume = false;
+	public static String fileName;
+
+	// writes the current state of the learning algorithm to fileName
+	public static void write() throws Exception {
+		// the random tests continue from a fresh seed, so a resumed run draws the same tests as an uninterrupted one
+		long testSeed = wordGenerator.reseedShared();
+
+		// write to a temporary file first so that a crash while writing keeps the previous checkpoint
+		File temp = new File(fileName + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(temp))));
+
+		out.writeInt(MAGIC);
+		out.writeInt(M2MA.alphabet.length);
+		for (String letter : M2MA.alphabet) {
+			writeWord(out, letter);
+		}
+
+		out.writeInt(M2MA.learnedSize);
+		for (int i=0; i<M2MA.learnedSize; i++) {
+			writeWord(out, M2MA.learnedRowIndices.get(i));
+			writeWord(out, M2MA.learnedColIndices.get(i));
+		}
+
+		// answered membership queries
+		out.writeInt(M2MA.Hankel.size());
+		for (Map.Entry<String, Integer> entry : M2MA.Hankel.entrySet()) {
+			writeWord(out, entry.getKey());
+			out.writeByte(entry.getValue());
+		}
+
+		// MQ counters and rounds, so that a resumed run reports the totals of the whole run
+		out.writeLong(M2MA.numMQ);
+		out.writeLong(M2MA.numEQMQ);
+		out.writeInt(M2MA.round);
+
+		// EQ counters
+		out.writeInt(arbitrary.EQNumPerformed);
+		if (M2MA.tested == null) {
+			out.writeInt(0);
+			out.writeInt(0);
+		} else {
+			out.writeInt(M2MA.tested.length);
+			out.writeInt(M2MA.tested.length == 0 ? 0 : M2MA.tested[0].length);
+			for (boolean[] row : M2MA.tested) {
+				for (boolean entry : row) {
+					out.writeBoolean(entry);
+				}
+			}
+		}
+
+		out.writeLong(wordGenerator.seed);
+		out.writeLong(testSeed);
+		out.close();
+
+		File file = new File(fileName);
+		if (file.exists() && !file.delete()) {
+			M2MA.throwException(null, "Unable to replace the checkpoint " + fileName + ".");
+		}
+		if (!temp.renameTo(file)) {
+			M2MA.throwException(null, "Unable to write the checkpoint " + fileName + ".");
+		}
+	}
+
+	// restores the state of the learning algorithm from fileName
+	public static void read() throws Exception {
+		if (!new File(fileName).exists()) {
+			M2MA.throwException(null, "Invalid input: no checkpoint " + fileName + " to resume from.");
+		}
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(fileName))));
+
+		if (in.readInt() != MAGIC) {
+			in.close();
+			M2MA.throwException(null, "Invalid input: " + fileName + " is not a checkpoint.");
+		}
+
+		int alphabetSize = in.readInt();
+		boolean sameAlphabet = alphabetSize == M2MA.alphabet.length;
+		for (int i=0; i<alphabetSize; i++) {
+			String letter = readWord(in);
+			if (sameAlphabet && !letter.equals(M2MA.alphabet[i])) {
+				sameAlphabet = false;
+			}
+		}
+		if (!sameAlphabet) {
+			in.close();
+			M2MA.throwException(null, "Invalid input: the checkpoint was written for a different alphabet.");
+		}
+
+		M2MA.learnedSize = in.readInt();
+		M2MA.learnedRowIndices = new ArrayList<String>();
+		M2MA.learnedColIndices = new ArrayList<String>();
+		for (int i=0; i<M2MA.learnedSize; i++) {
+			M2MA.learnedRowIndices.add(readWord(in));
+			M2MA.learnedColIndices.add(readWord(in));
+		}
+
+		int numQueries = in.readInt();
+		if (M2MA.Hankel == null) {
+			M2MA.Hankel = new HashMap<String, Integer>();
+		}
+		for (int i=0; i<numQueries; i++) {
+			String word = readWord(in);
+			M2MA.Hankel.put(word, (int) in.readByte());
+		}
+
+		M2MA.numMQ = in.readLong();
+		M2MA.numEQMQ = in.readLong();
+		M2MA.round = in.readInt();
+
+		arbitrary.EQNumPerformed = in.readInt();
+		int numRows = in.readInt();
+		int numCols = in.readInt();
+		boolean[][] tested = new boolean[numRows][numCols];
+		for (int i=0; i<numRows; i++) {
+			for (int j=0; j<numCols; j++) {
+				tested[i][j] = in.readBoolean();
+			}
+		}
+		// tested refers to the minimized mod-2-MA, which is recomputed when resuming
+		if (M2MA.tested != null && M2MA.tested.length == numRows && (numRows == 0 || M2MA.tested[0].length == numCols)) {
+			M2MA.tested = tested;
+		}
+
+		long seed = in.readLong();
+		long testSeed = in.readLong();
+		in.close();
+
+		wordGenerator.restoreShared(seed, testSeed);
+	}
+
+	// words may be longer than DataOutputStream.writeUTF allows
+	public static void writeWord(DataOutputStream out, String word) throws IOException {
+		byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	public static String readWord(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -13,6 +13,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Scanner;
+import java.util.SplittableRandom;
 
 public class convert {
 	
@@ -72,6 +73,16 @@ public class convert {
 		
 		System.out.println("Output file name.");
 		out = new PrintWriter(new BufferedWriter(new FileWriter(M2MA.in.nextLine())));
+		
+		// the same seed regenerates the same random automata
+		System.out.println("Input random seed (leave blank for a random seed).");
+		String seed = M2MA.in.nextLine().trim();
+		if (seed.length() != 0) {
+			wordGenerator.setSeed(Long.parseLong(seed));
+		} else {
+			wordGenerator.setSeed(new SplittableRandom().nextLong());
+		}
+		System.out.println("Using random seed " + wordGenerator.seed + ".");
 
 		M2MA.in.close();
 		
@@ -294,12 +305,13 @@ public class convert {
 	// generate the transitions of the NBA
 	// begin with a complete NBA and then randomly remove some given number of transitions
 	public static void NBAtransitions(int numStates, int numTransitionsToRemove, ArrayList<int[]>[] tempTransitions, ArrayList<int[]>[] reverseTempTransitions) {
+		wordGenerator random = wordGenerator.shared();
 		boolean[][][] unusedTransitions = new boolean[numStates + 1][M2MA.alphabet.length - 1][numStates + 1];
 		
 		for (int i = 0; i < numTransitionsToRemove; i++) {
-			int state1 = (int) (Math.random() * numStates) + 1;
-			int letter = (int) (Math.random() * (M2MA.alphabet.length - 1));
-			int state2 = (int) (Math.random() * numStates) + 1;
+			int state1 = random.nextInt(numStates) + 1;
+			int letter = random.nextInt(M2MA.alphabet.length - 1);
+			int state2 = random.nextInt(numStates) + 1;
 			
 			if (!unusedTransitions[state1][letter][state2]) {	
 				unusedTransitions[state1][letter][state2] = true;
@@ -328,11 +340,12 @@ public class convert {
 	// generate the transitions of the DBA
 	// begin with a complete DBA and then randomly remove some given number of transitions
 	public static void DBAtransitions(int numStates, int numTransitionsToRemove, ArrayList<int[]>[] tempTransitions, ArrayList<int[]>[] reverseTempTransitions) {
+		wordGenerator random = wordGenerator.shared();
 		boolean[][] unusedTransitions = new boolean[numStates + 1][M2MA.alphabet.length - 1];
 		
 		for (int i = 0; i < numTransitionsToRemove; i++) {
-			int state1 = (int) (Math.random() * numStates) + 1;
-			int letter = (int) (Math.random() * (M2MA.alphabet.length - 1));
+			int state1 = random.nextInt(numStates) + 1;
+			int letter = random.nextInt(M2MA.alphabet.length - 1);
 			
 			if (!unusedTransitions[state1][letter]) {
 				unusedTransitions[state1][letter] = true;
@@ -342,7 +355,7 @@ public class convert {
 		for (int state1 = 1; state1 <= numStates; state1++) {
 			for (int letter = 0; letter < M2MA.alphabet.length - 1; letter++) {
 				if (!unusedTransitions[state1][letter]) {
-					int state2 = (int) (Math.random() * numStates) + 1;
+					int state2 = random.nextInt(numStates) + 1;
 					
 					int[] transition = new int[2];
 					transition[0] = letter;
@@ -371,12 +384,13 @@ public class convert {
 	
 	// randomly choose numFinalStates states out of the set of reachableStates to be final 
 	public static void finalStates(HashSet<Integer> reachableStates, int numFinalStates, HashSet<Integer> tempFinalStates) {	
+		wordGenerator random = wordGenerator.shared();
 		int size = reachableStates.size();
 		numFinalStates = Math.min(size, numFinalStates);
 		HashSet<Integer> randomSet = new HashSet<Integer>();
 		
 		for (int i = 0; i < numFinalStates; i++) {
-			int randomNum = (int) (Math.random() * size);
+			int randomNum = random.nextInt(size);
 			
 			int count = 0;
 			while (count < size) {
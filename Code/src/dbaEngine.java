@@ -0,0 +1,92 @@
+/*
+ * Author: Nevin George
+ * Advisor: Dana Angluin
+ * Program Description: Membership engine of NBA.java for deterministic Büchi automata, e.g. the ones generated by
+ * convert.DBAtransitions(). Every state has at most one successor on every letter, so u(v)^ω has at most one run. The
+ * run is followed through u, and then through v's until the state at the end of a v repeats. u(v)^ω is accepted iff
+ * the v's between the two occurrences of that state pass by a final state, which takes O(|u| + n·|v|) steps.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class dbaEngine {
+
+	private final int n;
+	// successor[a][p] = the successor of p by letter a, or 0 if there is none
+	private final int[][] successor;
+	private final boolean[] finalStates;
+
+	// seenAt[p] = the number of v's read when the run was at p at the end of a v, if stamp[p] is the current query
+	private final int[] seenAt;
+	private final int[] stamp;
+	private int query;
+	// passed[k] = the number of final states entered while reading the first k v's
+	private final int[] passed;
+
+	private dbaEngine(int NBAStates, int[][] successor, boolean[] NBAFinalStates) {
+		this.n = NBAStates;
+		this.successor = successor;
+		this.finalStates = NBAFinalStates.clone();
+		seenAt = new int[n + 1];
+		stamp = new int[n + 1];
+		passed = new int[n + 2];
+	}
+
+	// returns the engine of the NBA if it is deterministic, null otherwise
+	public static dbaEngine build(int NBAStates, ArrayList<Integer>[][] NBATransitions, boolean[] NBAFinalStates) {
+		int numLetters = NBATransitions.length > 1 ? NBATransitions[1].length : 0;
+		int[][] successor = new int[numLetters][NBAStates + 1];
+		for (int p=1; p<=NBAStates; p++) {
+			for (int a=0; a<numLetters; a++) {
+				// a transition listed twice is a single transition
+				for (int p_end : NBATransitions[p][a]) {
+					if (successor[a][p] != 0 && successor[a][p] != p_end) {
+						return null;
+					}
+					successor[a][p] = p_end;
+				}
+			}
+		}
+		return new dbaEngine(NBAStates, successor, NBAFinalStates);
+	}
+
+	// returns true if the DBA accepts u(v)^ω, where u = word[0, dollarIndex) and v = word(dollarIndex, len) is not empty
+	public boolean accepts(int[] word, int dollarIndex, int len) {
+		int state = 1;
+		for (int i=0; i<dollarIndex; i++) {
+			state = successor[word[i]][state];
+			if (state == 0) {
+				return false;
+			}
+		}
+
+		// a new stamp forgets the states seen by the previous query
+		if (++query == 0) {
+			Arrays.fill(stamp, 0);
+			query = 1;
+		}
+
+		// one of the first n+1 states at the end of a v repeats
+		passed[0] = 0;
+		for (int k=0; k<=n; k++) {
+			if (stamp[state] == query) {
+				return passed[k] > passed[seenAt[state]];
+			}
+			stamp[state] = query;
+			seenAt[state] = k;
+
+			passed[k + 1] = passed[k];
+			for (int i=dollarIndex+1; i<len; i++) {
+				state = successor[word[i]][state];
+				if (state == 0) {
+					return false;
+				}
+				if (finalStates[state]) {
+					passed[k + 1]++;
+				}
+			}
+		}
+		return false;
+	}
+}
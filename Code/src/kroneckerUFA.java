@@ -0,0 +1,272 @@
+/*
+ * Author: Nevin George
+ * Advisor: Dana Angluin
+ * Program Description: Structured representation of the UFA built by SUBA.java from a SUBA of size n (selected with
+ * the option ufa=kronecker). After the letter $ every state (q,p,i) keeps its q, and its transitions on (p,i) are the
+ * same for every q, so each transition matrix of the UFA is the SUBA part plus the block-diagonal matrix I_n ⊗ B_a,
+ * where B_a is the (2n x 2n) matrix of the transitions ((p,i),a,(p',i')). Only the SUBA transitions and the B_a are
+ * stored, in O(n^2) memory instead of O(n^4). The UFA is a transitionSource.java, so minimize(), basis() and
+ * MQArbitrary() in M2MA.java compute the rows and columns of the transition matrices from them when they are needed.
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.IntFunction;
+
+public class kroneckerUFA implements transitionSource {
+
+	// true if the UFA of a SUBA is kept in its structured form
+	public static boolean enabled = false;
+	// the structured UFA that minimize() works on, or null if the input is given by its transition matrices
+	public static kroneckerUFA input;
+
+	private final int n;
+	private final int numLetters;
+	private final int dollar;
+	// subaRows[a][p] and subaCols[a][p] = the successors and predecessors of the SUBA state p by letter a
+	private final int[][][] subaRows;
+	private final int[][][] subaCols;
+	// blockRows[a][s] and blockCols[a][s] = the successors and predecessors by letter a of the block state s = 2*(p-1)+i
+	private final int[][][] blockRows;
+	private final int[][][] blockCols;
+
+	// index[k] = the trimmed index of state k of the UFA (0 if it was removed), state[t] = the state of trimmed index t
+	private final int[] index;
+	private final int[] state;
+	// number of states kept in the UFA
+	public final int size;
+
+	/*
+	 * Creates the structured UFA of the given SUBA, following the construction of SUBA.SUBAtoUFA(), and removes the
+	 * states that are unreachable from q_1 or cannot reach a final state (q_1 is always kept).
+	 */
+	public kroneckerUFA(int SUBAStates, ArrayList<Integer>[][] SUBATransitions, boolean[] SUBAFinalStates) {
+		n = SUBAStates;
+		numLetters = M2MA.alphabet.length;
+		dollar = M2MA.letterToIndex.get("$");
+
+		subaRows = new int[numLetters][n + 1][];
+		blockRows = new int[numLetters][2 * n][];
+		for (int a=0; a<numLetters; a++) {
+			ArrayList<Integer>[] block = newLists(2 * n);
+			for (int p=1; p<=n; p++) {
+				if (a == dollar) {
+					subaRows[a][p] = new int[0];
+					continue;
+				}
+				subaRows[a][p] = toSortedArray(SUBATransitions[p][a]);
+
+				// ((q,p,i),a,(q,p',i')), where i' = 1 if p'∈SUBAFinalStates and i if p'∉SUBAFinalStates
+				for (int p_end : subaRows[a][p]) {
+					block[2 * (p - 1)].add(2 * (p_end - 1) + (SUBAFinalStates[p_end] ? 1 : 0));
+					block[2 * (p - 1) + 1].add(2 * (p_end - 1) + 1);
+				}
+			}
+			for (int s=0; s<2*n; s++) {
+				blockRows[a][s] = toSortedArray(block[s]);
+			}
+		}
+		subaCols = transpose(subaRows, n + 1);
+		blockCols = transpose(blockRows, 2 * n);
+
+		// states reachable from q_1
+		int UFAStates = n + 2 * n * n;
+		boolean[] reachable = new boolean[UFAStates + 1];
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+		reachable[1] = true;
+		queue.add(1);
+		while (!queue.isEmpty()) {
+			int k = queue.poll();
+			for (int a=0; a<numLetters; a++) {
+				for (int next : successors(k, a)) {
+					if (!reachable[next]) {
+						reachable[next] = true;
+						queue.add(next);
+					}
+				}
+			}
+		}
+
+		// states that can reach a final state (q,q,1)
+		boolean[] coReachable = new boolean[UFAStates + 1];
+		for (int q=1; q<=n; q++) {
+			coReachable[SUBA.getIndex(q, q, 1)] = true;
+			queue.add(SUBA.getIndex(q, q, 1));
+		}
+		while (!queue.isEmpty()) {
+			int k = queue.poll();
+			for (int a=0; a<numLetters; a++) {
+				for (int previous : predecessors(k, a)) {
+					if (!coReachable[previous]) {
+						coReachable[previous] = true;
+						queue.add(previous);
+					}
+				}
+			}
+		}
+
+		index = new int[UFAStates + 1];
+		int kept = 0;
+		for (int k=1; k<=UFAStates; k++) {
+			if (k == 1 || (reachable[k] && coReachable[k])) {
+				index[k] = ++kept;
+			}
+		}
+		size = kept;
+		state = new int[size + 1];
+		for (int k=1; k<=UFAStates; k++) {
+			if (index[k] != 0) {
+				state[index[k]] = k;
+			}
+		}
+	}
+
+	// returns the final vector of the trimmed UFA, the characteristic vector of the states (q,q,1)
+	public HashMap<Integer, ArrayList<Integer>> finalVector() throws Exception {
+		HashMap<Integer, ArrayList<Integer>> finalVector = M2MA.initialize(1, size);
+		for (int q=1; q<=n; q++) {
+			int t = index[SUBA.getIndex(q, q, 1)];
+			if (t != 0) {
+				M2MA.addElement(finalVector, 1, t);
+			}
+		}
+		return finalVector;
+	}
+
+	/*
+	 * Returns row t (column t if rows is false) of every transition matrix of the trimmed UFA in the layout of
+	 * M2MA.stackTransitions(), j*(number of letters) + σ in increasing order for every 1 at (t, j) of transitionMatrix_σ.
+	 */
+	public int[] stacked(int t, boolean rows) {
+		int k = state[t];
+		ArrayList<Integer> entries = new ArrayList<Integer>();
+		for (int a=0; a<numLetters; a++) {
+			for (int j : rows ? successors(k, a) : predecessors(k, a)) {
+				if (index[j] != 0) {
+					entries.add(index[j] * numLetters + a);
+				}
+			}
+		}
+		return toSortedArray(entries);
+	}
+
+	public IntFunction<int[]> stacked(boolean rows) {
+		return t -> stacked(t, rows);
+	}
+
+	public void addRow(int t, int a, boolean[] next) {
+		for (int j : successors(state[t], a)) {
+			if (index[j] != 0) {
+				next[index[j]] = !next[index[j]];
+			}
+		}
+	}
+
+	// returns true if every row of every transition matrix of the trimmed UFA has at most one 1
+	public boolean isDeterministic() {
+		for (int t=1; t<=size; t++) {
+			boolean[] used = new boolean[numLetters];
+			for (int entry : stacked(t, true)) {
+				if (used[entry % numLetters]) {
+					return false;
+				}
+				used[entry % numLetters] = true;
+			}
+		}
+		return true;
+	}
+
+	// returns the transition matrices of the trimmed UFA
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public HashMap<Integer, ArrayList<Integer>>[] toSparse() throws Exception {
+		HashMap<Integer, ArrayList<Integer>>[] transitionMatrices = new HashMap[numLetters];
+		for (int a=0; a<numLetters; a++) {
+			transitionMatrices[a] = M2MA.initialize(size, size);
+		}
+		for (int t=1; t<=size; t++) {
+			for (int entry : stacked(t, true)) {
+				M2MA.addElement(transitionMatrices[entry % numLetters], t, entry / numLetters);
+			}
+		}
+		return transitionMatrices;
+	}
+
+	// returns the successors by letter a of state k of the UFA, where (q,p,i) is at SUBA.getIndex(q,p,i)
+	private int[] successors(int k, int a) {
+		if (k <= n) {
+			// (q,$,(q,q,0))
+			return a == dollar ? new int[] {SUBA.getIndex(k, k, 0)} : subaRows[a][k];
+		}
+		int base = k - (k - n - 1) % (2 * n);
+		int[] block = blockRows[a][k - base];
+		int[] out = new int[block.length];
+		for (int e=0; e<block.length; e++) {
+			out[e] = base + block[e];
+		}
+		return out;
+	}
+
+	// returns the predecessors by letter a of state k of the UFA
+	private int[] predecessors(int k, int a) {
+		if (k <= n) {
+			return subaCols[a][k];
+		}
+		int q = (k - n - 1) / (2 * n) + 1;
+		if (a == dollar) {
+			return k == SUBA.getIndex(q, q, 0) ? new int[] {q} : new int[0];
+		}
+		int base = k - (k - n - 1) % (2 * n);
+		int[] block = blockCols[a][k - base];
+		int[] out = new int[block.length];
+		for (int e=0; e<block.length; e++) {
+			out[e] = base + block[e];
+		}
+		return out;
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static ArrayList<Integer>[] newLists(int length) {
+		ArrayList<Integer>[] lists = new ArrayList[length];
+		for (int s=0; s<length; s++) {
+			lists[s] = new ArrayList<Integer>();
+		}
+		return lists;
+	}
+
+	// returns the transposes of the given adjacency lists, one per letter
+	private int[][][] transpose(int[][][] rows, int length) {
+		int[][][] cols = new int[numLetters][length][];
+		for (int a=0; a<numLetters; a++) {
+			ArrayList<Integer>[] lists = newLists(length);
+			for (int s=0; s<length; s++) {
+				if (rows[a][s] != null) {
+					for (int j : rows[a][s]) {
+						lists[j].add(s);
+					}
+				}
+			}
+			for (int s=0; s<length; s++) {
+				cols[a][s] = toSortedArray(lists[s]);
+			}
+		}
+		return cols;
+	}
+
+	// returns the distinct elements of list in increasing order, a transition listed twice is a single transition
+	private static int[] toSortedArray(ArrayList<Integer> list) {
+		int[] out = new int[list.size()];
+		for (int e=0; e<out.length; e++) {
+			out[e] = list.get(e);
+		}
+		Arrays.sort(out);
+		int distinct = 0;
+		for (int e=0; e<out.length; e++) {
+			if (distinct == 0 || out[e] != out[distinct - 1]) {
+				out[distinct++] = out[e];
+			}
+		}
+		return Arrays.copyOf(out, distinct);
+	}
+}
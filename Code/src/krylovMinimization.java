@@ -0,0 +1,339 @@
+/*
+ * Author: Nevin George
+ * Advisor: Dana Angluin
+ * Program Description: Alternative backend of minimize() in M2MA.java for very large sparse inputs (selected with the
+ * option minimizer=krylov). The input is only accessed through products of vectors with its transition matrices.
+ * The Krylov space of the initial vector gives the state space, and the input is projected onto it, giving an
+ * automaton of dimension r that only has reachable states. The Krylov space of the final vector under the projected
+ * transition matrices then has the minimal dimension m, and its vectors are the columns of an r x m observation
+ * table. minimize() selects m linearly independent rows of this table as usual, but the (state space x co-state
+ * space) table of the input is never formed, and the r x m table is never built as a row-major HashMap: coStates holds
+ * it column-wise, and its rows are transposed from the co-state vectors a block at a time while they are eliminated. The projected transition matrices, the bases and the
+ * elimination are kept in spillStore.java, so with a RAM budget (memory=N) they are paged from memory-mapped scratch
+ * files once the budget is used up.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.IntFunction;
+
+public class krylovMinimization {
+
+	// true if minimize() uses this backend
+	public static boolean enabled = false;
+
+	// largest size in bytes of a block of rows of the observation table
+	private static final int BLOCK_BYTES = 1 << 24;
+
+	// dimension r of the projected automaton, the number of rows of the observation table
+	private static int numStates;
+	// co-state vectors of the projected automaton, coStates[j] is the column of the observation table of coStateIndices[j]
+	private static spillStore coStates;
+	// images[σ][j] = projected transitionMatrix_σ * coStates[j], the column of the observation table of σ+coStateIndices[j]
+	private static spillStore[] images;
+
+	/*
+	 * Projects the input onto its state space and forms the co-state space of the projected automaton, whose vectors
+	 * are the columns of the observation table. The words of its rows and columns are added to stateIndices and
+	 * coStateIndices.
+	 */
+	public static void project(HashMap<Integer, ArrayList<Integer>> finalVector, transitionSource transitions, int size, ArrayList<String> stateIndices, ArrayList<String> coStateIndices) throws Exception {
+		int numLetters = M2MA.alphabet.length;
+		int words = (size + 64) / 64;
+		close();
+
+		// state space: state vectors (1,0,...,0) * transitionMatrix_ω over GF(2)^size, bit k is the state k
+		IntFunction<int[]> stackedTransitions = transitions.stacked(true);
+		long[] finalBits = new long[words];
+		if (finalVector.get(1) != null) {
+			for (int k : finalVector.get(1)) {
+				finalBits[k >> 6] |= 1L << (k & 63);
+			}
+		}
+
+		echelonForm states = new echelonForm(size + 1, true);
+		spillStore stateVectors = new spillStore(words);
+		long[] initialVector = new long[words];
+		initialVector[0] = 1L << 1;
+		states.reduceOrAdd(initialVector.clone());
+		stateVectors.add(initialVector);
+		stateIndices.add("");
+
+		// projected transition matrices, bit j of projected[σ][i] is 1 if the basis vector j is in the sum that gives
+		// stateVectors[i] * transitionMatrix_σ
+		spillStore[] projected = new spillStore[numLetters];
+		for (int c=0; c<numLetters; c++) {
+			projected[c] = new spillStore(words);
+		}
+		ArrayList<Boolean> projectedFinal = new ArrayList<Boolean>();
+
+		// the vectors are extended in the order they are added to the basis
+		for (int i=0; i<stateVectors.size(); i++) {
+			long[] stateVector = stateVectors.copy(i);
+			projectedFinal.add(parity(stateVector, finalBits));
+
+			long[][] extensions = new long[numLetters][words];
+			for (int k=nextBit(stateVector, 0); k!=-1; k=nextBit(stateVector, k + 1)) {
+				for (int entry : stackedTransitions.apply(k)) {
+					int j = entry / numLetters;
+					extensions[entry % numLetters][j >> 6] ^= 1L << (j & 63);
+				}
+			}
+
+			for (int c=0; c<numLetters; c++) {
+				long[] extension = extensions[c];
+				if (states.reduceOrAdd(extension.clone())) {
+					projected[c].add(states.coordinates);
+				} else {
+					// linearly independent, a new state of the projected automaton
+					long[] unit = new long[words];
+					unit[stateVectors.size() >> 6] = 1L << (stateVectors.size() & 63);
+					projected[c].add(unit);
+					stateVectors.add(extension);
+					stateIndices.add(M2MA.addStrings(stateIndices.get(i), M2MA.alphabet[c]));
+				}
+			}
+		}
+		int r = stateIndices.size();
+		numStates = r;
+		states.close();
+		stateVectors.close();
+
+		// co-state space: co-state vectors transitionMatrix_ω * (final vector) of the projected automaton over GF(2)^r
+		int rWords = (r + 63) / 64;
+		long[] projectedFinalVector = new long[rWords];
+		for (int i=0; i<r; i++) {
+			if (projectedFinal.get(i)) {
+				projectedFinalVector[i >> 6] |= 1L << (i & 63);
+			}
+		}
+
+		echelonForm coStateBasis = new echelonForm(r, false);
+		coStates = new spillStore(rWords);
+		images = new spillStore[numLetters];
+		for (int c=0; c<numLetters; c++) {
+			images[c] = new spillStore(rWords);
+		}
+		if (!coStateBasis.reduceOrAdd(projectedFinalVector.clone())) {
+			coStates.add(projectedFinalVector);
+			coStateIndices.add("");
+		}
+
+		for (int j=0; j<coStates.size(); j++) {
+			long[] coState = coStates.copy(j);
+			for (int c=0; c<numLetters; c++) {
+				// bit i of the image is the product of the row i of the projected transition matrix and the co-state
+				long[] image = new long[rWords];
+				for (int i=0; i<r; i++) {
+					if (projected[c].parity(i, coState)) {
+						image[i >> 6] |= 1L << (i & 63);
+					}
+				}
+				images[c].add(image);
+
+				if (!coStateBasis.reduceOrAdd(image.clone())) {
+					coStates.add(image);
+					coStateIndices.add(M2MA.addStrings(M2MA.alphabet[c], coStateIndices.get(j)));
+				}
+			}
+		}
+		coStateBasis.close();
+		for (spillStore letterProjected : projected) {
+			letterProjected.close();
+		}
+	}
+
+	// returns a factorization of the observation table, the co-state vectors are linearly independent so its rank is m
+	public static rankFactorization factorization() throws IOException {
+		return new rankFactorization(numStates, coStates.size(), new tableRows());
+	}
+
+	// returns the rows of the observation table, for rows requested in increasing order
+	public static IntFunction<long[]> tableRows() {
+		return new tableRows();
+	}
+
+	// returns the observation table, which is only formed to be displayed
+	public static HashMap<Integer, ArrayList<Integer>> observationTable() throws Exception {
+		int m = coStates.size();
+		HashMap<Integer, ArrayList<Integer>> observationTable = M2MA.initialize(numStates, m);
+		for (int j=0; j<m; j++) {
+			long[] coState = coStates.copy(j);
+			for (int i=nextBit(coState, 0); i!=-1; i=nextBit(coState, i + 1)) {
+				M2MA.addElement(observationTable, i + 1, j + 1);
+			}
+		}
+		return observationTable;
+	}
+
+	// returns xSigma, the rows of the observation table of the words rows[i]+σ, restricted to the co-state words
+	public static HashMap<Integer, ArrayList<Integer>> xSigma(int letter, ArrayList<Integer> rows) throws Exception {
+		int dim = rows.size();
+		HashMap<Integer, ArrayList<Integer>> xSigma = M2MA.initialize(dim, dim);
+		for (int b=0; b<dim; b++) {
+			// column b of xSigma is (projected transitionMatrix_σ * coStates[b]) restricted to rows
+			for (int a=0; a<dim; a++) {
+				int i = rows.get(a) - 1;
+				if ((images[letter].get(b, i >> 6) & (1L << (i & 63))) != 0) {
+					M2MA.addElement(xSigma, a + 1, b + 1);
+				}
+			}
+		}
+		return xSigma;
+	}
+
+	// releases the co-state vectors of the last observation table and their scratch files
+	public static void close() throws IOException {
+		if (coStates != null) {
+			coStates.close();
+			for (spillStore image : images) {
+				image.close();
+			}
+			coStates = null;
+			images = null;
+		}
+	}
+
+	/*
+	 * Rows of the observation table, whose columns are the co-state vectors. A block of rows is transposed from a few
+	 * words of every co-state vector, so only the block is on the heap and the co-state vectors are read once per
+	 * block when the rows are requested in increasing order.
+	 */
+	private static class tableRows implements IntFunction<long[]> {
+
+		private final int m;
+		// block[t] = row blockStart+t (0-based)
+		private final long[][] block;
+		private int blockStart;
+
+		private tableRows() {
+			m = coStates.size();
+			int mWords = (m + 63) / 64;
+			int rWords = (numStates + 63) / 64;
+			long bytes = spillStore.budget == 0 ? BLOCK_BYTES : Math.min(BLOCK_BYTES, spillStore.budget / 4);
+			// a block covers at least one word of the co-state vectors
+			int blockWords = (int) Math.max(1, Math.min(rWords, bytes / (64L * 8 * Math.max(1, mWords))));
+			block = new long[64 * blockWords][mWords];
+			blockStart = -1;
+		}
+
+		public long[] apply(int row) {
+			int i = row - 1;
+			if (blockStart == -1 || i < blockStart || i >= blockStart + block.length) {
+				blockStart = i - i % block.length;
+				for (long[] blockRow : block) {
+					Arrays.fill(blockRow, 0);
+				}
+				int fromWord = blockStart >> 6;
+				int toWord = Math.min((numStates + 63) / 64, fromWord + block.length / 64);
+				for (int j=0; j<m; j++) {
+					for (int w=fromWord; w<toWord; w++) {
+						long word = coStates.get(j, w);
+						while (word != 0) {
+							int t = ((w - fromWord) << 6) + Long.numberOfTrailingZeros(word);
+							block[t][j >> 6] |= 1L << (j & 63);
+							word &= word - 1;
+						}
+					}
+				}
+			}
+			return block[i - blockStart].clone();
+		}
+	}
+
+	/*
+	 * Incremental row echelon form over GF(2). Every row has its lowest 1 at a distinct pivot and, if coordinates
+	 * are tracked, the combination of the added vectors that gives it.
+	 */
+	private static class echelonForm {
+
+		private final spillStore rows;
+		private final spillStore transforms;
+		// pivotRow[p] = the row with its pivot at p, or -1
+		private final int[] pivotRow;
+		private final boolean trackCoordinates;
+		private final int coordinateWords;
+		// combination of the added vectors subtracted by the last call of reduceOrAdd
+		private long[] coordinates;
+
+		private echelonForm(int length, boolean trackCoordinates) {
+			this.coordinateWords = (length + 63) / 64;
+			this.rows = new spillStore((length + 63) / 64);
+			this.transforms = new spillStore(trackCoordinates ? coordinateWords : 0);
+			this.pivotRow = new int[length];
+			Arrays.fill(pivotRow, -1);
+			this.trackCoordinates = trackCoordinates;
+		}
+
+		/*
+		 * Reduces vector in place by the rows of the form. Returns true if vector is in the span of the added vectors,
+		 * in which case coordinates holds its coordinates in the added vectors. Otherwise the reduced vector is added
+		 * to the form and false is returned.
+		 */
+		private boolean reduceOrAdd(long[] vector) throws IOException {
+			coordinates = new long[trackCoordinates ? coordinateWords : 0];
+			int w = 0;
+			while (true) {
+				while (w < vector.length && vector[w] == 0) {
+					w++;
+				}
+				if (w == vector.length) {
+					return true;
+				}
+
+				int pivot = (w << 6) + Long.numberOfTrailingZeros(vector[w]);
+				int row = pivotRow[pivot];
+				if (row == -1) {
+					// the lowest 1 of the reduced vector is a new pivot
+					int index = rows.size();
+					if (trackCoordinates) {
+						coordinates[index >> 6] ^= 1L << (index & 63);
+					}
+					pivotRow[pivot] = index;
+					rows.add(vector);
+					if (trackCoordinates) {
+						transforms.add(coordinates);
+					}
+					return false;
+				}
+
+				rows.xorInto(row, vector, w);
+				if (trackCoordinates) {
+					transforms.xorInto(row, coordinates, 0);
+				}
+			}
+		}
+
+		private void close() throws IOException {
+			rows.close();
+			transforms.close();
+		}
+	}
+
+	// returns the parity of the number of common 1s of v1 and v2
+	private static boolean parity(long[] v1, long[] v2) {
+		long sum = 0;
+		for (int k=0; k<v1.length; k++) {
+			sum ^= v1[k] & v2[k];
+		}
+		return (Long.bitCount(sum) & 1) == 1;
+	}
+
+	// returns the position of the first 1 of v at or after from, or -1
+	private static int nextBit(long[] v, int from) {
+		int w = from >> 6;
+		if (w >= v.length) {
+			return -1;
+		}
+		long word = v[w] & (-1L << (from & 63));
+		while (word == 0) {
+			if (++w == v.length) {
+				return -1;
+			}
+			word = v[w];
+		}
+		return (w << 6) + Long.numberOfTrailingZeros(word);
+	}
+}
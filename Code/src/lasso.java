@@ -0,0 +1,72 @@
+/*
+ * Author: Nevin George
+ * Advisor: Dana Angluin
+ * Program Description: Normal form of the words u$v that encode the ultimately periodic word u(v)^ω, used by M2MA.MQ()
+ * when the target is an NBA or a SUBA, whose answer only depends on u(v)^ω. Many words encode the same u(v)^ω, e.g.
+ * u$vv, uv$v and u$v, and rotations of v absorbed into u. The normal form replaces v by its primitive root and then
+ * moves letters from the end of u to the front of v while they match the end of v, so that u is as short as possible.
+ * Every encoding of u(v)^ω has the same normal form, so the Hankel matrix answers all of them from one query.
+ */
+
+public class lasso {
+
+	// returns true if the target only depends on the ultimately periodic word encoded by u$v
+	public static boolean applies() {
+		return NBA.NBAFinalStates != null || SUBA.SUBAFinalStates != null;
+	}
+
+	// returns the normal form of word, or word itself if it does not contain exactly one $ followed by a nonempty v
+	public static String canonical(String word) {
+		if (word.length() == 0) {
+			return word;
+		}
+		String[] wordArr = word.split(" ");
+
+		int dollarIndex = -1;
+		for (int i=0; i<wordArr.length; i++) {
+			if (wordArr[i].equals("$")) {
+				if (dollarIndex != -1) {
+					return word;
+				}
+				dollarIndex = i;
+			}
+		}
+		if (dollarIndex == -1 || dollarIndex == wordArr.length - 1) {
+			return word;
+		}
+		int uLength = dollarIndex;
+		int vStart = dollarIndex + 1;
+		int vLength = wordArr.length - vStart;
+
+		// the primitive root of v has the length of the shortest period of v if that period divides |v|
+		int[] border = new int[vLength + 1];
+		border[0] = -1;
+		for (int i=1, k=-1; i<=vLength; i++) {
+			while (k >= 0 && !wordArr[vStart + k].equals(wordArr[vStart + i - 1])) {
+				k = border[k];
+			}
+			border[i] = ++k;
+		}
+		int period = vLength - border[vLength];
+		int root = vLength % period == 0 ? period : vLength;
+
+		// the end of u is absorbed into v while it matches the end of the rotated root
+		int absorbed = 0;
+		while (absorbed < uLength && wordArr[uLength - 1 - absorbed].equals(wordArr[vStart + Math.floorMod(root - 1 - absorbed, root)])) {
+			absorbed++;
+		}
+		if (absorbed == 0 && root == vLength) {
+			return word;
+		}
+
+		StringBuilder out = new StringBuilder();
+		for (int i=0; i<uLength-absorbed; i++) {
+			out.append(wordArr[i]).append(' ');
+		}
+		out.append('$');
+		for (int i=0; i<root; i++) {
+			out.append(' ').append(wordArr[vStart + Math.floorMod(i - absorbed, root)]);
+		}
+		return out.toString();
+	}
+}
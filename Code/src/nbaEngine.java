@@ -0,0 +1,436 @@
+/*
+ * Author: Nevin George
+ * Advisor: Dana Angluin
+ * Program Description: Membership engine of NBA.java. Words are int[] of letter indices, and a set of states is a
+ * bitset. The successors of every state on every letter are precomputed as bitsets, and the sets used by a query are
+ * allocated once, so a membership query is a loop of word operations.
+ * For the periodic part v, the relation of v over the states is computed once per query as a boolean matrix whose
+ * rows are bitsets, together with the pairs (p,q) that v connects through a final state. Its transitive closure, the
+ * relation of v^+, is found by repeated squaring, and gives both the states reachable after u by any number of v's
+ * and every state with an accepting loop on v.
+ * The learner asks many queries with the same v and different u's, so the closed relations of the most recently used
+ * v's are kept in an LRU cache of at most cacheBytes bytes, and a query whose v is in the cache only reads u. The bytes
+ * of an entry are estimated with the headers of its objects and arrays and the slots that point to them.
+ * The u's of the learner share long prefixes (a row index followed by letters), so the states reachable from q_1 on
+ * the prefixes read so far are kept in a trie of at most trieBytes bytes, and u is only read from its longest prefix in
+ * the trie. When the trie is full, the least recently used leaves are evicted and their nodes reused.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class nbaEngine {
+
+	private final int n;
+	private final int words;
+	// successors[a][p] = the states reachable from p by letter a
+	private final long[][][] successors;
+	private final long[] finalStates;
+
+	// states reachable by the current query
+	private final long[] reachable;
+	// scratch relation used to compose and square relations
+	private final relation square;
+
+	// estimated bytes of an object or array header and of a pointer, on a 64-bit JVM without compressed pointers
+	private static final long HEADER = 16;
+	private static final long POINTER = 8;
+
+	// bytes of the cache of every engine, set with the option cache=N in megabytes
+	public static long cacheBytes = 1L << 26;
+	// closed relations of the periodic parts of recent queries, in order of least recent use
+	private final LinkedHashMap<range, relation> periodicCache;
+	// key used to look up the periodic part of a query without copying it
+	private final range probe = new range();
+	// bytes of one relation and of the entries in the cache
+	private final long relationBytes;
+	private long cacheUsed;
+	// relation computed outside of the cache, reused by the next query that is not in the cache
+	private relation spare;
+
+	// bytes of the prefix trie of every engine, set with the option trie=N in megabytes
+	public static long trieBytes = 1L << 26;
+	// root of the trie of the prefixes of the u's, the empty prefix, and the number of nodes it has and can hold
+	private final prefix root;
+	private int trieSize;
+	private final int trieCapacity;
+	// nodes of the trie other than the root, from the least to the most recently used, each less recent than its parent
+	private prefix oldest;
+	private prefix newest;
+	// number of the current query, the nodes on the path of its u are stamped with it
+	private int query;
+	// states reachable on the prefixes of u that are read outside of the trie
+	private final long[][] scratch;
+
+	public nbaEngine(int NBAStates, ArrayList<Integer>[][] NBATransitions, boolean[] NBAFinalStates) {
+		n = NBAStates;
+		words = (NBAStates + 64) / 64;
+		int numLetters = NBATransitions.length > 1 ? NBATransitions[1].length : 0;
+
+		successors = new long[numLetters][n + 1][words];
+		finalStates = new long[words];
+		for (int p=1; p<=n; p++) {
+			for (int a=0; a<numLetters; a++) {
+				for (int p_end : NBATransitions[p][a]) {
+					successors[a][p][p_end >> 6] |= 1L << (p_end & 63);
+				}
+			}
+			if (NBAFinalStates[p]) {
+				finalStates[p >> 6] |= 1L << (p & 63);
+			}
+		}
+
+		reachable = new long[words];
+		square = new relation(n, words);
+
+		periodicCache = new LinkedHashMap<range, relation>(16, 0.75f, true);
+		// the relation, its arrays to and passed of n+1 rows, and its loops
+		relationBytes = aligned(3 * POINTER) + 2 * (aligned(POINTER * (n + 1)) + (n + 1) * aligned(8L * words)) + aligned(8L * words);
+
+		// the node with its states and children, and the pointers states, children, parent, older and newer
+		long nodeBytes = aligned(5 * POINTER + 8) + aligned(8L * words) + aligned(POINTER * numLetters);
+		trieCapacity = (int) Math.max(1, Math.min(Integer.MAX_VALUE, trieBytes / nodeBytes));
+		root = new prefix(words, numLetters);
+		root.states[0] = 1L << 1;
+		trieSize = 1;
+		scratch = new long[2][words];
+	}
+
+	/*
+	 * Node of the prefix trie, states = the states reachable from q_1 on the prefix, which is the prefix of parent
+	 * followed by letter. older and newer link the nodes in order of use, and stamp is the last query that used it.
+	 */
+	private static final class prefix {
+		final long[] states;
+		final prefix[] children;
+		prefix parent;
+		int letter;
+		prefix older;
+		prefix newer;
+		int stamp;
+
+		prefix(int words, int numLetters) {
+			this.states = new long[words];
+			this.children = new prefix[numLetters];
+		}
+	}
+
+	// key of the cache, the letters letters[from, to) of a word and their hash
+	private static final class range {
+		int[] letters;
+		int from;
+		int to;
+		int hash;
+
+		void set(int[] letters, int from, int to) {
+			this.letters = letters;
+			this.from = from;
+			this.to = to;
+			hash = 1;
+			for (int i=from; i<to; i++) {
+				hash = 31 * hash + letters[i];
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			range other = (range) o;
+			if (hash != other.hash || to - from != other.to - other.from) {
+				return false;
+			}
+			for (int i=0; i<to-from; i++) {
+				if (letters[from + i] != other.letters[other.from + i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/*
+	 * Relation of a word over the states, to[p] = the states reachable from p on the word and passed[p] = the states
+	 * reachable from p on the word through a final state (the state reached counts, p itself does not). loops is the set
+	 * of states p with p∈passed[p].
+	 */
+	private static final class relation {
+		final long[][] to;
+		final long[][] passed;
+		final long[] loops;
+
+		relation(int n, int words) {
+			to = new long[n + 1][words];
+			passed = new long[n + 1][words];
+			loops = new long[words];
+		}
+	}
+
+	// returns true if the NBA accepts u(v)^ω, where u = word[0, dollarIndex) and v = word(dollarIndex, len) is not empty
+	public boolean accepts(int[] word, int dollarIndex, int len) {
+		// states reachable from q_1 on one u, which do not depend on v
+		long[] afterU = readPrefix(word, dollarIndex);
+
+		relation periodic = closedRelation(word, dollarIndex + 1, len);
+
+		// states reachable from q_1 on one u and a non-negative number of v's
+		System.arraycopy(afterU, 0, reachable, 0, words);
+		for (int p=nextState(afterU, 0); p!=-1; p=nextState(afterU, p + 1)) {
+			or(reachable, periodic.to[p]);
+		}
+
+		// see if any of the reachable states have an accepting loop
+		for (int k=0; k<words; k++) {
+			if ((reachable[k] & periodic.loops[k]) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// returns the relation of v^+ for v = word[from, to) from the cache, or computes it in the least recently used entry
+	private relation closedRelation(int[] word, int from, int to) {
+		probe.set(word, from, to);
+		relation periodic = periodicCache.get(probe);
+		if (periodic != null) {
+			return periodic;
+		}
+
+		// the least recently used entries are evicted until the new one fits, and the space of the last one is reused
+		long bytes = relationBytes + keyBytes(to - from);
+		Iterator<Map.Entry<range, relation>> eldest = periodicCache.entrySet().iterator();
+		while (cacheUsed + bytes > cacheBytes && eldest.hasNext()) {
+			Map.Entry<range, relation> entry = eldest.next();
+			cacheUsed -= relationBytes + keyBytes(entry.getKey().to - entry.getKey().from);
+			spare = entry.getValue();
+			eldest.remove();
+		}
+		periodic = spare != null ? spare : new relation(n, words);
+		spare = null;
+		relate(word, from, to, periodic);
+		close(periodic);
+
+		if (cacheUsed + bytes <= cacheBytes) {
+			// only a new entry copies the letters of v
+			range key = new range();
+			key.set(Arrays.copyOfRange(word, from, to), 0, to - from);
+			periodicCache.put(key, periodic);
+			cacheUsed += bytes;
+		} else {
+			spare = periodic;
+		}
+		return periodic;
+	}
+
+	// bytes of the key of a v of length len in the cache, with its letters, its entry and its slot in the table
+	private static long keyBytes(int len) {
+		// range: letters, from, to, hash; entry: hash, key, value, next, before, after
+		return aligned(POINTER + 12) + aligned(4L * len) + aligned(4 + 5 * POINTER) + 2 * POINTER;
+	}
+
+	// bytes of an object or an array with a payload of the given bytes, aligned to 8 bytes
+	private static long aligned(long payload) {
+		return (HEADER + payload + 7) & ~7L;
+	}
+
+	// sets out to the relation of word[start, end), by composing the relations of its letters
+	private void relate(int[] word, int start, int end, relation out) {
+		for (int p=1; p<=n; p++) {
+			Arrays.fill(out.to[p], 0);
+			Arrays.fill(out.passed[p], 0);
+			out.to[p][p >> 6] = 1L << (p & 63);
+		}
+
+		for (int i=start; i<end; i++) {
+			long[][] next = successors[word[i]];
+			for (int p=1; p<=n; p++) {
+				long[] to = out.to[p];
+				long[] passed = out.passed[p];
+				long[] nextTo = square.to[p];
+				long[] nextPassed = square.passed[p];
+				Arrays.fill(nextTo, 0);
+				Arrays.fill(nextPassed, 0);
+				for (int q=nextState(to, 0); q!=-1; q=nextState(to, q + 1)) {
+					or(nextTo, next[q]);
+				}
+				for (int q=nextState(passed, 0); q!=-1; q=nextState(passed, q + 1)) {
+					or(nextPassed, next[q]);
+				}
+				for (int k=0; k<words; k++) {
+					nextPassed[k] |= nextTo[k] & finalStates[k];
+					to[k] = nextTo[k];
+					passed[k] = nextPassed[k];
+				}
+			}
+		}
+	}
+
+	/*
+	 * Replaces the relation r of a word by the relation of its positive powers, r U r∘r U r∘r∘r U ..., by squaring
+	 * r := r U r∘r until it no longer changes, and sets its accepting loops.
+	 */
+	private void close(relation r) {
+		boolean grown = true;
+		while (grown) {
+			grown = false;
+			for (int p=1; p<=n; p++) {
+				// (r∘r)[p] = the union of r[q] over q∈r[p], passed through a final state in either half
+				long[] nextTo = square.to[p];
+				long[] nextPassed = square.passed[p];
+				System.arraycopy(r.to[p], 0, nextTo, 0, words);
+				System.arraycopy(r.passed[p], 0, nextPassed, 0, words);
+				for (int q=nextState(r.to[p], 0); q!=-1; q=nextState(r.to[p], q + 1)) {
+					or(nextTo, r.to[q]);
+					or(nextPassed, r.passed[q]);
+				}
+				for (int q=nextState(r.passed[p], 0); q!=-1; q=nextState(r.passed[p], q + 1)) {
+					or(nextPassed, r.to[q]);
+				}
+			}
+			for (int p=1; p<=n; p++) {
+				for (int k=0; k<words; k++) {
+					grown |= square.to[p][k] != r.to[p][k] || square.passed[p][k] != r.passed[p][k];
+				}
+				System.arraycopy(square.to[p], 0, r.to[p], 0, words);
+				System.arraycopy(square.passed[p], 0, r.passed[p], 0, words);
+			}
+		}
+
+		Arrays.fill(r.loops, 0);
+		for (int p=1; p<=n; p++) {
+			if ((r.passed[p][p >> 6] & (1L << (p & 63))) != 0) {
+				r.loops[p >> 6] |= 1L << (p & 63);
+			}
+		}
+	}
+
+	// set |= row
+	private void or(long[] set, long[] row) {
+		for (int k=0; k<words; k++) {
+			set[k] |= row[k];
+		}
+	}
+
+	/*
+	 * Returns the states reachable from q_1 on u = word[0, len), starting from the longest prefix of u in the trie and
+	 * adding the longer prefixes of u to it. A new node takes the place of the least recently used leaf once the trie is
+	 * full, and the prefixes that do not fit, when every other node is on the path of u, are read in scratch arrays.
+	 */
+	private long[] readPrefix(int[] u, int len) {
+		prefix node = root;
+		int i = 0;
+		while (i < len && node.children[u[i]] != null) {
+			node = node.children[u[i++]];
+		}
+		if (++query == 0) {
+			query = 1;
+		}
+		// the path of u is the most recently used, so that it is not evicted while u is added
+		use(node);
+		if (i == len) {
+			return node.states;
+		}
+
+		for (; i<len; i++) {
+			prefix child = newNode();
+			if (child == null) {
+				break;
+			}
+			step(node.states, u[i], child.states);
+			child.parent = node;
+			child.letter = u[i];
+			node.children[u[i]] = child;
+			node = child;
+		}
+		use(node);
+
+		long[] states = node.states;
+		for (; i<len; i++) {
+			long[] next = scratch[i & 1];
+			step(states, u[i], next);
+			states = next;
+		}
+		return states;
+	}
+
+	// next = the states reachable from states by letter
+	private void step(long[] states, int letter, long[] next) {
+		Arrays.fill(next, 0);
+		for (int p=nextState(states, 0); p!=-1; p=nextState(states, p + 1)) {
+			or(next, successors[letter][p]);
+		}
+	}
+
+	/*
+	 * Makes node and then each of its ancestors the most recently used node, so that every node stays less recent than
+	 * its parent and the least recently used node is always a leaf.
+	 */
+	private void use(prefix node) {
+		for (prefix p=node; p!=root; p=p.parent) {
+			if (p != newest) {
+				// unlink p, if it is in the list, and link it as the newest
+				if (p.older != null) {
+					p.older.newer = p.newer;
+				} else if (oldest == p) {
+					oldest = p.newer;
+				}
+				if (p.newer != null) {
+					p.newer.older = p.older;
+				}
+				p.older = newest;
+				p.newer = null;
+				if (newest != null) {
+					newest.newer = p;
+				} else {
+					oldest = p;
+				}
+				newest = p;
+			}
+			p.stamp = query;
+		}
+	}
+
+	// returns a new node, or the least recently used leaf removed from the trie, or null if every node is on the path of u
+	private prefix newNode() {
+		if (trieSize < trieCapacity) {
+			trieSize++;
+			return new prefix(words, successors.length);
+		}
+		prefix leaf = oldest;
+		if (leaf == null || leaf.stamp == query) {
+			return null;
+		}
+
+		oldest = leaf.newer;
+		if (oldest != null) {
+			oldest.older = null;
+		} else {
+			newest = null;
+		}
+		leaf.newer = null;
+		leaf.parent.children[leaf.letter] = null;
+		return leaf;
+	}
+
+	// returns the first state of the set at or after from, or -1
+	private static int nextState(long[] set, int from) {
+		int k = from >> 6;
+		if (k >= set.length) {
+			return -1;
+		}
+		long word = set[k] & (-1L << (from & 63));
+		while (word == 0) {
+			if (++k == set.length) {
+				return -1;
+			}
+			word = set[k];
+		}
+		return (k << 6) + Long.numberOfTrailingZeros(word);
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * Author: Nevin George
+ * Advisor: Dana Angluin
+ * Program Description: Transition monoid of a small NBA, used by NBA.java to answer membership queries by table
+ * lookup (selected with the option monoid=N, the largest monoid that is built). An element of the monoid is the
+ * relation of a word over the states, to[p] = the states reachable from p on the word and passed[p] = the ones reached
+ * through a final state, with one bitset per row. The monoid is enumerated once from the identity by multiplying by
+ * every letter, so every word maps to an element by following the product table letter by letter. Whether u(v)^ω is
+ * accepted only depends on the elements of u and v, and is stored in an (element of u, element of v) table that is
+ * filled the first time a pair is queried.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+public class nbaMonoid {
+
+	// largest number of elements of a monoid that is built, 0 to always use nbaEngine (the table takes limit^2 / 4 bytes)
+	public static int limit = 1024;
+
+	private final int n;
+	private final int size;
+	// to[e][p] and passed[e][p] = row p of the relation of element e, where the identity is element 0
+	private final long[][] to;
+	private final long[][] passed;
+	// product[e][a] = the element of e followed by letter a
+	private final int[][] product;
+
+	// plusTo[e][p] = row p of the relation of the positive powers of e, plusLoops[e] = the states p with p∈passed[p]
+	private final long[][] plusTo;
+	private final long[] plusLoops;
+	private final boolean[] plusKnown;
+	// known and accepted = the pairs (u, v) of elements that have been looked up and the ones that are accepted
+	private final long[] known;
+	private final long[] accepted;
+
+	private nbaMonoid(int n, ArrayList<long[]> to, ArrayList<long[]> passed, ArrayList<int[]> product) {
+		this.n = n;
+		this.size = to.size();
+		this.to = to.toArray(new long[size][]);
+		this.passed = passed.toArray(new long[size][]);
+		this.product = product.toArray(new int[size][]);
+
+		plusTo = new long[size][];
+		plusLoops = new long[size];
+		plusKnown = new boolean[size];
+		known = new long[(int) (((long) size * size + 63) / 64)];
+		accepted = new long[known.length];
+	}
+
+	/*
+	 * Returns the transition monoid of the NBA, or null if the NBA has more than 63 states or the monoid has more than
+	 * limit elements.
+	 */
+	public static nbaMonoid build(int NBAStates, ArrayList<Integer>[][] NBATransitions, boolean[] NBAFinalStates) {
+		int n = NBAStates;
+		if (limit < 1 || n > 63) {
+			return null;
+		}
+		int numLetters = NBATransitions.length > 1 ? NBATransitions[1].length : 0;
+
+		// the relations of the letters
+		long finalStates = 0;
+		long[][] letterTo = new long[numLetters][n + 1];
+		for (int p=1; p<=n; p++) {
+			for (int a=0; a<numLetters; a++) {
+				for (int p_end : NBATransitions[p][a]) {
+					letterTo[a][p] |= 1L << p_end;
+				}
+			}
+			if (NBAFinalStates[p]) {
+				finalStates |= 1L << p;
+			}
+		}
+
+		ArrayList<long[]> to = new ArrayList<long[]>();
+		ArrayList<long[]> passed = new ArrayList<long[]>();
+		ArrayList<int[]> product = new ArrayList<int[]>();
+		HashMap<String, Integer> elements = new HashMap<String, Integer>();
+
+		long[] identity = new long[n + 1];
+		for (int p=1; p<=n; p++) {
+			identity[p] = 1L << p;
+		}
+		to.add(identity);
+		passed.add(new long[n + 1]);
+		product.add(new int[numLetters]);
+		elements.put(key(identity, passed.get(0)), 0);
+
+		// breadth-first search of the elements, e·a for every element e and letter a
+		for (int e=0; e<to.size(); e++) {
+			for (int a=0; a<numLetters; a++) {
+				long[] nextTo = new long[n + 1];
+				long[] nextPassed = new long[n + 1];
+				for (int p=1; p<=n; p++) {
+					for (long states=to.get(e)[p]; states!=0; states&=states-1) {
+						nextTo[p] |= letterTo[a][Long.numberOfTrailingZeros(states)];
+					}
+					for (long states=passed.get(e)[p]; states!=0; states&=states-1) {
+						nextPassed[p] |= letterTo[a][Long.numberOfTrailingZeros(states)];
+					}
+					nextPassed[p] |= nextTo[p] & finalStates;
+				}
+
+				String key = key(nextTo, nextPassed);
+				Integer next = elements.get(key);
+				if (next == null) {
+					if (to.size() == limit) {
+						return null;
+					}
+					next = to.size();
+					elements.put(key, next);
+					to.add(nextTo);
+					passed.add(nextPassed);
+					product.add(new int[numLetters]);
+				}
+				product.get(e)[a] = next;
+			}
+		}
+		return new nbaMonoid(n, to, passed, product);
+	}
+
+	// returns the element of word[from, to)
+	public int element(int[] word, int from, int to) {
+		int e = 0;
+		for (int i=from; i<to; i++) {
+			e = product[e][word[i]];
+		}
+		return e;
+	}
+
+	// returns true if the NBA accepts u(v)^ω, where u = word[0, dollarIndex) and v = word(dollarIndex, len) is not empty
+	public boolean accepts(int[] word, int dollarIndex, int len) {
+		int x = element(word, 0, dollarIndex);
+		int y = element(word, dollarIndex + 1, len);
+		long pair = (long) x * size + y;
+		int k = (int) (pair >> 6);
+		long bit = 1L << (pair & 63);
+
+		if ((known[k] & bit) == 0) {
+			if (!plusKnown[y]) {
+				close(y);
+			}
+
+			// states reachable from q_1 on one u and a non-negative number of v's
+			long reachable = to[x][1];
+			for (long states=to[x][1]; states!=0; states&=states-1) {
+				reachable |= plusTo[y][Long.numberOfTrailingZeros(states)];
+			}
+			if ((reachable & plusLoops[y]) != 0) {
+				accepted[k] |= bit;
+			}
+			known[k] |= bit;
+		}
+		return (accepted[k] & bit) != 0;
+	}
+
+	// sets the relation of the positive powers of element e, by squaring r := r U r∘r until it no longer changes
+	private void close(int e) {
+		long[] rTo = to[e].clone();
+		long[] rPassed = passed[e].clone();
+		boolean grown = true;
+		while (grown) {
+			grown = false;
+			long[] nextTo = rTo.clone();
+			long[] nextPassed = rPassed.clone();
+			for (int p=1; p<=n; p++) {
+				for (long states=rTo[p]; states!=0; states&=states-1) {
+					int q = Long.numberOfTrailingZeros(states);
+					nextTo[p] |= rTo[q];
+					nextPassed[p] |= rPassed[q];
+				}
+				for (long states=rPassed[p]; states!=0; states&=states-1) {
+					nextPassed[p] |= rTo[Long.numberOfTrailingZeros(states)];
+				}
+				grown |= nextTo[p] != rTo[p] || nextPassed[p] != rPassed[p];
+			}
+			rTo = nextTo;
+			rPassed = nextPassed;
+		}
+
+		for (int p=1; p<=n; p++) {
+			if ((rPassed[p] & (1L << p)) != 0) {
+				plusLoops[e] |= 1L << p;
+			}
+		}
+		plusTo[e] = rTo;
+		plusKnown[e] = true;
+	}
+
+	// returns the rows of a relation as the chars of a string
+	private static String key(long[] to, long[] passed) {
+		char[] chars = new char[8 * to.length];
+		for (int p=0; p<to.length; p++) {
+			for (int i=0; i<4; i++) {
+				chars[8 * p + i] = (char) (to[p] >>> (16 * i));
+				chars[8 * p + 4 + i] = (char) (passed[p] >>> (16 * i));
+			}
+		}
+		return new String(chars);
+	}
+}
@@ -0,0 +1,265 @@
+/*
+ * Author: Nevin George
+ * Advisor: Dana Angluin
+ * Program Description: Fast path of minimize() in M2MA.java for deterministic inputs, where every row of every
+ * transition matrix has at most one 1. Such an M2MA is a partial DFA, so its reachable states are merged with
+ * Hopcroft's partition refinement algorithm in O(n*|Σ|*log(n)) and the states that cannot reach a final state are
+ * removed. The quotient computes the same function as the input and is usually much smaller, so the linear algebra
+ * of minimize() that follows is cheaper.
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+public class partitionRefinement {
+
+	// dimension, final vector and transition matrices of the quotient computed by quotient()
+	public static int quotientSize;
+	public static HashMap<Integer, ArrayList<Integer>> quotientFinalVector;
+	public static HashMap<Integer, ArrayList<Integer>>[] quotientTransitionMatrices;
+
+	// returns true if every row of every transition matrix has at most one 1
+	public static boolean isDeterministic(HashMap<Integer, ArrayList<Integer>>[] transitionMatrices) {
+		for (HashMap<Integer, ArrayList<Integer>> transitionMatrix : transitionMatrices) {
+			for (int row : transitionMatrix.keySet()) {
+				if (row > 0 && transitionMatrix.get(row).size() > 1) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Computes the quotient of a deterministic M2MA by the equivalence of its states. State 0 is a sink standing in
+	 * for the missing transitions, its block holds the states whose residual function is zero and is dropped.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public static void quotient(HashMap<Integer, ArrayList<Integer>> finalVector, HashMap<Integer, ArrayList<Integer>>[] transitionMatrices, int size) throws Exception {
+		int numLetters = transitionMatrices.length;
+		int numStates = size + 1;
+
+		// delta[a][q] = the state reached from q by letter a
+		int[][] delta = new int[numLetters][numStates];
+		for (int a=0; a<numLetters; a++) {
+			for (int q=1; q<=size; q++) {
+				ArrayList<Integer> row = transitionMatrices[a].get(q);
+				if (row != null && row.size() == 1) {
+					delta[a][q] = row.get(0);
+				}
+			}
+		}
+
+		boolean[] isFinal = new boolean[numStates];
+		if (finalVector.get(1) != null) {
+			for (int q : finalVector.get(1)) {
+				isFinal[q] = true;
+			}
+		}
+
+		// states reachable from q_1, and the sink
+		boolean[] reachable = new boolean[numStates];
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+		reachable[0] = true;
+		reachable[1] = true;
+		queue.add(1);
+		while (!queue.isEmpty()) {
+			int q = queue.poll();
+			for (int a=0; a<numLetters; a++) {
+				if (!reachable[delta[a][q]]) {
+					reachable[delta[a][q]] = true;
+					queue.add(delta[a][q]);
+				}
+			}
+		}
+
+		// inverse transitions of the reachable states: the predecessors of q by a are inverse[a][inverseStart[a][q]...inverseStart[a][q+1]-1]
+		int[][] inverseStart = new int[numLetters][numStates + 1];
+		int[][] inverse = new int[numLetters][];
+		for (int a=0; a<numLetters; a++) {
+			int count = 0;
+			for (int p=0; p<numStates; p++) {
+				if (reachable[p]) {
+					inverseStart[a][delta[a][p] + 1]++;
+					count++;
+				}
+			}
+			for (int q=0; q<numStates; q++) {
+				inverseStart[a][q + 1] += inverseStart[a][q];
+			}
+			inverse[a] = new int[count];
+			int[] next = inverseStart[a].clone();
+			for (int p=0; p<numStates; p++) {
+				if (reachable[p]) {
+					inverse[a][next[delta[a][p]]++] = p;
+				}
+			}
+		}
+
+		/*
+		 * The partition is stored as a permutation of the reachable states in which every block is a contiguous range
+		 * elements[first[b]...end[b]-1]. The states of block b marked by the current splitter are moved to the front
+		 * of its range, elements[first[b]...marked[b]-1].
+		 */
+		int[] elements = new int[numStates];
+		int[] location = new int[numStates];
+		int[] blockOf = new int[numStates];
+		int[] first = new int[numStates];
+		int[] end = new int[numStates];
+		int[] marked = new int[numStates];
+		int numBlocks = 0;
+
+		// initial partition: final and non-final states
+		int numElements = 0;
+		for (int pass=0; pass<2; pass++) {
+			int start = numElements;
+			for (int q=0; q<numStates; q++) {
+				if (reachable[q] && isFinal[q] == (pass == 0)) {
+					elements[numElements] = q;
+					location[q] = numElements;
+					blockOf[q] = numBlocks;
+					numElements++;
+				}
+			}
+			if (numElements > start) {
+				first[numBlocks] = start;
+				end[numBlocks] = numElements;
+				marked[numBlocks] = start;
+				numBlocks++;
+			}
+		}
+
+		// splitters (block, letter) still to be processed, it suffices to start with one of the two initial blocks
+		ArrayDeque<int[]> splitters = new ArrayDeque<int[]>();
+		boolean[][] isSplitter = new boolean[numStates][numLetters];
+		int smallest = (numBlocks == 2 && end[1] - first[1] < end[0] - first[0]) ? 1 : 0;
+		for (int a=0; a<numLetters; a++) {
+			splitters.add(new int[] {smallest, a});
+			isSplitter[smallest][a] = true;
+		}
+
+		ArrayList<Integer> touched = new ArrayList<Integer>();
+		while (!splitters.isEmpty()) {
+			int[] splitter = splitters.poll();
+			int s = splitter[0];
+			int a = splitter[1];
+			isSplitter[s][a] = false;
+
+			// mark the predecessors by a of the states of s, s itself may be split while marking
+			int[] statesOfS = new int[end[s] - first[s]];
+			System.arraycopy(elements, first[s], statesOfS, 0, statesOfS.length);
+			for (int q : statesOfS) {
+				for (int k=inverseStart[a][q]; k<inverseStart[a][q + 1]; k++) {
+					int p = inverse[a][k];
+					int b = blockOf[p];
+					if (location[p] < marked[b]) {
+						// already marked
+						continue;
+					}
+					if (marked[b] == first[b]) {
+						touched.add(b);
+					}
+
+					// swap p to the end of the marked part of b
+					int other = elements[marked[b]];
+					elements[location[p]] = other;
+					location[other] = location[p];
+					elements[marked[b]] = p;
+					location[p] = marked[b];
+					marked[b]++;
+				}
+			}
+
+			// split every touched block into its marked and unmarked states
+			for (int b : touched) {
+				if (marked[b] == end[b]) {
+					// every state of b was marked
+					marked[b] = first[b];
+					continue;
+				}
+
+				// the smaller part becomes the new block
+				int newBlock = numBlocks++;
+				if (marked[b] - first[b] <= end[b] - marked[b]) {
+					first[newBlock] = first[b];
+					end[newBlock] = marked[b];
+					first[b] = marked[b];
+				} else {
+					first[newBlock] = marked[b];
+					end[newBlock] = end[b];
+					end[b] = marked[b];
+				}
+				marked[b] = first[b];
+				marked[newBlock] = first[newBlock];
+				for (int k=first[newBlock]; k<end[newBlock]; k++) {
+					blockOf[elements[k]] = newBlock;
+				}
+
+				for (int c=0; c<numLetters; c++) {
+					if (!isSplitter[b][c]) {
+						// processing the smaller part of b suffices
+						int add = (end[newBlock] - first[newBlock] <= end[b] - first[b]) ? newBlock : b;
+						splitters.add(new int[] {add, c});
+						isSplitter[add][c] = true;
+					} else {
+						splitters.add(new int[] {newBlock, c});
+						isSplitter[newBlock][c] = true;
+					}
+				}
+			}
+			touched.clear();
+		}
+
+		// number the blocks in breadth-first order from the block of q_1, leaving out the block of the sink
+		int deadBlock = blockOf[0];
+		int[] blockToState = new int[numBlocks];
+		int[] representative = new int[numBlocks + 1];
+		quotientSize = 0;
+		if (blockOf[1] != deadBlock) {
+			blockToState[blockOf[1]] = ++quotientSize;
+			representative[quotientSize] = 1;
+			queue.add(1);
+		}
+		while (!queue.isEmpty()) {
+			int q = queue.poll();
+			for (int a=0; a<numLetters; a++) {
+				int b = blockOf[delta[a][q]];
+				if (b != deadBlock && blockToState[b] == 0) {
+					blockToState[b] = ++quotientSize;
+					representative[quotientSize] = delta[a][q];
+					queue.add(delta[a][q]);
+				}
+			}
+		}
+
+		// every state of the input computes the zero function
+		if (quotientSize == 0) {
+			quotientSize = 1;
+			quotientFinalVector = M2MA.initialize(1, 1);
+			quotientTransitionMatrices = new HashMap[numLetters];
+			for (int a=0; a<numLetters; a++) {
+				quotientTransitionMatrices[a] = M2MA.initialize(1, 1);
+			}
+			return;
+		}
+
+		quotientFinalVector = M2MA.initialize(1, quotientSize);
+		quotientTransitionMatrices = new HashMap[numLetters];
+		for (int a=0; a<numLetters; a++) {
+			quotientTransitionMatrices[a] = M2MA.initialize(quotientSize, quotientSize);
+		}
+		for (int i=1; i<=quotientSize; i++) {
+			int q = representative[i];
+			if (isFinal[q]) {
+				M2MA.addElement(quotientFinalVector, 1, i);
+			}
+			for (int a=0; a<numLetters; a++) {
+				int b = blockOf[delta[a][q]];
+				if (b != deadBlock) {
+					M2MA.addElement(quotientTransitionMatrices[a], i, blockToState[b]);
+				}
+			}
+		}
+	}
+}
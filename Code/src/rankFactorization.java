@@ -0,0 +1,204 @@
+/*
+ * Author: Nevin George
+ * Advisor: Dana Angluin
+ * Program Description: Rank-revealing factorization of a sparse matrix in the field modulo 2, used by minimize() in
+ * M2MA.java. A single pass of Gauss-Jordan elimination over the rows, taken in order, finds a maximal set of
+ * linearly independent rows, the pivot columns of their reduced row echelon form, and the row operations X with
+ * X * (rows) = E. Restricted to the pivot columns, E is a permutation matrix P, so the square submatrix M of the
+ * independent rows and pivot columns is nonsingular and M^-1 = P^T * X. The rows are read one at a time, and E and X
+ * are kept in spillStore.java, so with a RAM budget (memory=N) the elimination is paged from scratch files.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.function.IntFunction;
+
+public class rankFactorization {
+
+	// linearly independent rows (1-based), in increasing order
+	private final ArrayList<Integer> rows;
+	// pivot columns (1-based), in increasing order
+	private final ArrayList<Integer> cols;
+	// reduced row echelon form of the independent rows, reduced[i] has its pivot at pivots[i]
+	private final spillStore reduced;
+	private final ArrayList<Integer> pivots;
+	// transform[i] = the combination of the independent rows that gives reduced[i]
+	private final spillStore transform;
+
+	/*
+	 * Factorizes the given sparse matrix.
+	 * @param matrix The matrix to factorize.
+	 */
+	public rankFactorization(HashMap<Integer, ArrayList<Integer>> matrix) throws IOException {
+		this(matrix.get(0).get(0), matrix.get(0).get(1), rowBits(matrix));
+	}
+
+	/*
+	 * Factorizes a matrix given by its rows.
+	 * @param numRows The number of rows of the matrix.
+	 * @param numCols The number of columns of the matrix.
+	 * @param matrixRows Returns a new bit vector of row r (bit c-1 is column c), called for the rows in increasing order.
+	 */
+	public rankFactorization(int numRows, int numCols, IntFunction<long[]> matrixRows) throws IOException {
+		int words = (numCols + 63) / 64;
+		// the rank is at most min(numRows, numCols)
+		int maxRank = Math.min(numRows, numCols);
+		int transformWords = (maxRank + 63) / 64;
+
+		rows = new ArrayList<Integer>();
+		cols = new ArrayList<Integer>();
+		reduced = new spillStore(words);
+		pivots = new ArrayList<Integer>();
+		transform = new spillStore(transformWords);
+
+		// the remaining rows are linearly dependent once the rank is maxRank
+		for (int r=1; r<=numRows && rows.size()<maxRank; r++) {
+			long[] row = matrixRows.apply(r);
+			long[] combination = new long[transformWords];
+
+			// eliminate the pivots of the rows found so far
+			for (int i=0; i<reduced.size(); i++) {
+				int pivot = pivots.get(i);
+				if ((row[pivot >> 6] & (1L << (pivot & 63))) != 0) {
+					reduced.xorInto(i, row, 0);
+					transform.xorInto(i, combination, 0);
+				}
+			}
+
+			int pivot = lowestBit(row);
+			if (pivot == -1) {
+				// linearly dependent with the rows found so far
+				continue;
+			}
+
+			int rank = rows.size();
+			combination[rank >> 6] ^= 1L << (rank & 63);
+
+			// keep the form reduced by eliminating the new pivot from the other rows
+			for (int i=0; i<reduced.size(); i++) {
+				if ((reduced.get(i, pivot >> 6) & (1L << (pivot & 63))) != 0) {
+					reduced.xorWith(i, row);
+					transform.xorWith(i, combination);
+				}
+			}
+
+			rows.add(r);
+			reduced.add(row);
+			pivots.add(pivot);
+			transform.add(combination);
+		}
+
+		// the pivot columns of the reduced row echelon form, in increasing order, are the columns that are linearly
+		// independent of the columns before them
+		boolean[] isPivot = new boolean[numCols];
+		for (int pivot : pivots) {
+			isPivot[pivot] = true;
+		}
+		for (int c=0; c<numCols; c++) {
+			if (isPivot[c]) {
+				cols.add(c + 1);
+			}
+		}
+	}
+
+	public int rank() {
+		return rows.size();
+	}
+
+	public ArrayList<Integer> getRows() {
+		return rows;
+	}
+
+	public ArrayList<Integer> getCols() {
+		return cols;
+	}
+
+	// returns the (rank x rank) submatrix of matrix made of the linearly independent rows and the pivot columns
+	public HashMap<Integer, ArrayList<Integer>> getSubMatrix(HashMap<Integer, ArrayList<Integer>> matrix) throws Exception {
+		int rank = rank();
+		HashMap<Integer, Integer> colPositions = new HashMap<Integer, Integer>();
+		for (int j=0; j<rank; j++) {
+			colPositions.put(cols.get(j), j + 1);
+		}
+
+		HashMap<Integer, ArrayList<Integer>> subMatrix = M2MA.initialize(rank, rank);
+		for (int i=0; i<rank; i++) {
+			ArrayList<Integer> row = matrix.get(rows.get(i));
+			if (row != null) {
+				for (int c : row) {
+					Integer j = colPositions.get(c);
+					if (j != null) {
+						M2MA.addElement(subMatrix, i + 1, j);
+					}
+				}
+			}
+		}
+		return subMatrix;
+	}
+
+	// returns the same submatrix from the rows of the matrix, matrixRows is called for the independent rows in increasing order
+	public HashMap<Integer, ArrayList<Integer>> getSubMatrix(IntFunction<long[]> matrixRows) throws Exception {
+		int rank = rank();
+		HashMap<Integer, ArrayList<Integer>> subMatrix = M2MA.initialize(rank, rank);
+		for (int i=0; i<rank; i++) {
+			long[] row = matrixRows.apply(rows.get(i));
+			for (int j=0; j<rank; j++) {
+				int c = cols.get(j) - 1;
+				if ((row[c >> 6] & (1L << (c & 63))) != 0) {
+					M2MA.addElement(subMatrix, i + 1, j + 1);
+				}
+			}
+		}
+		return subMatrix;
+	}
+
+	// returns the inverse of getSubMatrix(matrix) from the factors, row j is the row operation with its pivot at cols[j]
+	public HashMap<Integer, ArrayList<Integer>> getInverse() throws Exception {
+		int rank = rank();
+		HashMap<Integer, Integer> pivotRows = new HashMap<Integer, Integer>();
+		for (int i=0; i<rank; i++) {
+			pivotRows.put(pivots.get(i) + 1, i);
+		}
+
+		HashMap<Integer, ArrayList<Integer>> inverse = M2MA.initialize(rank, rank);
+		for (int j=0; j<rank; j++) {
+			int combination = pivotRows.get(cols.get(j));
+			for (int k=0; k<rank; k++) {
+				if ((transform.get(combination, k >> 6) & (1L << (k & 63))) != 0) {
+					M2MA.addElement(inverse, j + 1, k + 1);
+				}
+			}
+		}
+		return inverse;
+	}
+
+	// releases the factors and their scratch files
+	public void close() throws IOException {
+		reduced.close();
+		transform.close();
+	}
+
+	// returns the rows of matrix as bit vectors
+	private static IntFunction<long[]> rowBits(HashMap<Integer, ArrayList<Integer>> matrix) {
+		int words = (matrix.get(0).get(1) + 63) / 64;
+		return r -> {
+			long[] row = new long[words];
+			if (matrix.get(r) != null) {
+				for (int c : matrix.get(r)) {
+					row[(c - 1) >> 6] ^= 1L << ((c - 1) & 63);
+				}
+			}
+			return row;
+		};
+	}
+
+	private static int lowestBit(long[] v) {
+		for (int k=0; k<v.length; k++) {
+			if (v[k] != 0) {
+				return (k << 6) + Long.numberOfTrailingZeros(v[k]);
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Author: Nevin George
+ * Advisor: Dana Angluin
+ * Program Description: transitionSource.java for transition matrices in the sparse HashMap representation of
+ * M2MA.java.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.function.IntFunction;
+
+public class sparseTransitions implements transitionSource {
+
+	private final HashMap<Integer, ArrayList<Integer>>[] transitionMatrices;
+	private final int dimension;
+
+	public sparseTransitions(HashMap<Integer, ArrayList<Integer>>[] transitionMatrices, int dimension) {
+		this.transitionMatrices = transitionMatrices;
+		this.dimension = dimension;
+	}
+
+	// the rows or columns are stacked once, when the function is created
+	public IntFunction<int[]> stacked(boolean rows) {
+		int[][] stacked = M2MA.stackTransitions(transitionMatrices, dimension, rows);
+		return k -> stacked[k];
+	}
+
+	public void addRow(int k, int a, boolean[] next) {
+		ArrayList<Integer> row = transitionMatrices[a].get(k);
+		if (row != null) {
+			for (int j : row) {
+				next[j] = !next[j];
+			}
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * Author: Nevin George
+ * Advisor: Dana Angluin
+ * Program Description: Store of bit vectors of a fixed number of words, used by krylovMinimization.java and
+ * rankFactorization.java for the out-of-core minimization of very large inputs. Vectors are appended and can be
+ * updated in place. They are kept on the heap until all of the stores reach the RAM budget (set with memory=N, in
+ * megabytes). Later vectors are written to memory-mapped scratch files in segments, and the elimination reads and
+ * updates them in place, so the operating system pages them in and out block by block instead of the program
+ * failing with an OutOfMemoryError.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+public class spillStore {
+
+	// RAM budget in bytes shared by all stores, 0 for no limit
+	public static long budget = 0;
+	// bytes of heap used by all open stores
+	private static long used = 0;
+
+	// size of a memory-mapped segment of a scratch file
+	private static final int SEGMENT_BYTES = 1 << 26;
+	// sizes in bytes of an array header and of a reference on a 64-bit JVM
+	private static final int HEADER = 16;
+	private static final int POINTER = 8;
+
+	private final int words;
+	// bytes of heap of a vector, its array and its slot in heapVectors
+	private final long vectorBytes;
+	private final ArrayList<long[]> heapVectors;
+	private final ArrayList<LongBuffer> segments;
+	private final int vectorsPerSegment;
+	private RandomAccessFile file;
+	private File fileName;
+	private int size;
+
+	// creates an empty store of vectors of the given number of words
+	public spillStore(int words) {
+		this.words = words;
+		this.vectorBytes = HEADER + 8L * words + POINTER;
+		this.heapVectors = new ArrayList<long[]>();
+		this.segments = new ArrayList<LongBuffer>();
+		this.vectorsPerSegment = Math.max(1, SEGMENT_BYTES / Math.max(1, words * 8));
+		this.size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// appends vector to the store, which keeps a reference to it while it is on the heap
+	public void add(long[] vector) throws IOException {
+		if (segments.isEmpty() && (budget == 0 || reserve(vectorBytes))) {
+			heapVectors.add(vector);
+			size++;
+			return;
+		}
+
+		int index = size - heapVectors.size();
+		if (index / vectorsPerSegment == segments.size()) {
+			mapSegment();
+		}
+		LongBuffer segment = segments.get(index / vectorsPerSegment);
+		int offset = (index % vectorsPerSegment) * words;
+		for (int k=0; k<words; k++) {
+			segment.put(offset + k, vector[k]);
+		}
+		size++;
+	}
+
+	// returns word k of vector index
+	public long get(int index, int k) {
+		if (index < heapVectors.size()) {
+			return heapVectors.get(index)[k];
+		}
+		index -= heapVectors.size();
+		return segments.get(index / vectorsPerSegment).get((index % vectorsPerSegment) * words + k);
+	}
+
+	// returns a copy of vector index
+	public long[] copy(int index) {
+		if (index < heapVectors.size()) {
+			return heapVectors.get(index).clone();
+		}
+		long[] out = new long[words];
+		index -= heapVectors.size();
+		LongBuffer segment = segments.get(index / vectorsPerSegment);
+		int offset = (index % vectorsPerSegment) * words;
+		for (int k=0; k<words; k++) {
+			out[k] = segment.get(offset + k);
+		}
+		return out;
+	}
+
+	// target ^= vector index, starting at word from
+	public void xorInto(int index, long[] target, int from) {
+		int length = Math.min(target.length, words);
+		if (index < heapVectors.size()) {
+			long[] vector = heapVectors.get(index);
+			for (int k=from; k<length; k++) {
+				target[k] ^= vector[k];
+			}
+			return;
+		}
+		index -= heapVectors.size();
+		LongBuffer segment = segments.get(index / vectorsPerSegment);
+		int offset = (index % vectorsPerSegment) * words;
+		for (int k=from; k<length; k++) {
+			target[k] ^= segment.get(offset + k);
+		}
+	}
+
+	// vector index ^= vector
+	public void xorWith(int index, long[] vector) {
+		int length = Math.min(vector.length, words);
+		if (index < heapVectors.size()) {
+			long[] target = heapVectors.get(index);
+			for (int k=0; k<length; k++) {
+				target[k] ^= vector[k];
+			}
+			return;
+		}
+		index -= heapVectors.size();
+		LongBuffer segment = segments.get(index / vectorsPerSegment);
+		int offset = (index % vectorsPerSegment) * words;
+		for (int k=0; k<length; k++) {
+			segment.put(offset + k, segment.get(offset + k) ^ vector[k]);
+		}
+	}
+
+	// returns the parity of the number of common 1s of vector index and v
+	public boolean parity(int index, long[] v) {
+		int length = Math.min(v.length, words);
+		long sum = 0;
+		if (index < heapVectors.size()) {
+			long[] vector = heapVectors.get(index);
+			for (int k=0; k<length; k++) {
+				sum ^= vector[k] & v[k];
+			}
+		} else {
+			index -= heapVectors.size();
+			LongBuffer segment = segments.get(index / vectorsPerSegment);
+			int offset = (index % vectorsPerSegment) * words;
+			for (int k=0; k<length; k++) {
+				if (v[k] != 0) {
+					sum ^= segment.get(offset + k) & v[k];
+				}
+			}
+		}
+		return (Long.bitCount(sum) & 1) == 1;
+	}
+
+	// releases the heap budget of the store and deletes its scratch file
+	public void close() throws IOException {
+		synchronized (spillStore.class) {
+			used -= vectorBytes * heapVectors.size();
+		}
+		heapVectors.clear();
+		size = 0;
+
+		// the mappings of the segments are released when they are garbage collected
+		segments.clear();
+		if (file != null) {
+			file.close();
+			// if the file cannot be deleted while it is still mapped, it is deleted on exit
+			fileName.delete();
+			file = null;
+		}
+	}
+
+	private static synchronized boolean reserve(long bytes) {
+		if (used + bytes > budget) {
+			return false;
+		}
+		used += bytes;
+		return true;
+	}
+
+	private void mapSegment() throws IOException {
+		if (file == null) {
+			fileName = File.createTempFile("minimize", ".spill");
+			fileName.deleteOnExit();
+			file = new RandomAccessFile(fileName, "rw");
+		}
+		long segmentBytes = 8L * words * vectorsPerSegment;
+		segments.add(file.getChannel().map(FileChannel.MapMode.READ_WRITE, segmentBytes * segments.size(), segmentBytes).asLongBuffer());
+	}
+}
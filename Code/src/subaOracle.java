@@ -0,0 +1,299 @@
+/*
+ * Author: Nevin George
+ * Advisor: Dana Angluin
+ * Program Description: Learning mode of SUBA.java in which the SUBA itself answers the queries (selected with the
+ * option oracle=statistical or oracle=exhaustive:N). A word u$v is accepted iff u(v)^ω is accepted by the SUBA, which
+ * SUBA.MQ_SUBA evaluates in polynomial time, and every other word is rejected, exactly like the UFA of the SUBA.
+ * The UFA of size 2n^2+n is never formed or minimized, so the equivalence queries are statistical or test every word
+ * up to a bounded length. Accepted words are rare among random words, so the statistical tests also follow random
+ * walks of the SUBA: u leads from q_1 to some q and v leads from q back to q. An exhaustive EQ tests the words u$v with
+ * a nonempty v of length at most N, the only words the SUBA can accept, and answers them with SUBA.MQ_SUBA without
+ * storing them in the Hankel matrix.
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+public class subaOracle {
+
+	// true if the SUBA answers the queries of the learning algorithm
+	public static boolean enabled = false;
+
+	// EQ settings, an exhaustive EQ tests every word u$v of length at most maxTestLen
+	public static boolean exhaustive = false;
+	public static int maxTestLen = 25;
+	public static int numTests = 5000;
+
+	// sets the EQ from an option of the form oracle=statistical or oracle=exhaustive:N
+	public static boolean parseOption(String option) {
+		if (!option.startsWith("oracle=")) {
+			return false;
+		}
+
+		String[] setting = option.substring(7).split(":");
+		if (setting[0].equals("statistical") && setting.length == 1) {
+			exhaustive = false;
+		} else if (setting[0].equals("exhaustive") && setting.length == 2) {
+			exhaustive = true;
+			maxTestLen = Integer.parseInt(setting[1]);
+		} else {
+			return false;
+		}
+		enabled = true;
+		return true;
+	}
+
+	// MQ for the SUBA, 1 iff the word is of the form u$v and u(v)^ω is accepted
+	public static int MQ(String word) {
+		int[] letters = SUBA.toLetters(word);
+		int dollar = M2MA.letterToIndex.get("$");
+
+		int dollarIndex = -1;
+		for (int i=0; i<letters.length; i++) {
+			if (letters[i] == dollar) {
+				if (dollarIndex != -1) {
+					return 0;
+				}
+				dollarIndex = i;
+			}
+		}
+		if (dollarIndex == -1) {
+			return 0;
+		}
+
+		return SUBA.MQ_SUBA(letters, dollarIndex, letters.length) ? 1 : 0;
+	}
+
+	public static boolean EQ(HashMap<Integer, ArrayList<Integer>> hypothesisFinalVector, HashMap<Integer, ArrayList<Integer>>[] hypothesisTransitionMatrices) throws Exception {
+		M2MA.clearCounterExamples();
+		transitionSource hypothesisTransitions = new sparseTransitions(hypothesisTransitionMatrices, hypothesisFinalVector.get(0).get(1));
+
+		if (exhaustive) {
+			// every word u$v with a nonempty v of length at most maxTestLen, from where the previous EQ stopped
+			for (long i=0; i<numWords(); i++) {
+				if (cursor == null || !next()) {
+					start();
+				}
+
+				M2MA.numMQ++;
+				int target = SUBA.MQ_SUBA(cursor, cursorDollar, cursorLen) ? 1 : 0;
+				if (target != M2MA.MQArbitrary(hypothesisFinalVector, hypothesisTransitions, cursor, cursorLen)) {
+					if (M2MA.addCounterExample(wordGenerator.toWord(cursor, cursorLen))) {
+						// the next EQ tests this word again first
+						retest = true;
+						return false;
+					}
+				}
+
+				// return the shortest counter-examples
+				if (M2MA.counterExamples.size() != 0 && cursorDollar == cursorLen - 2 && isLast()) {
+					retest = false;
+					return false;
+				}
+			}
+			return M2MA.counterExamples.size() == 0;
+		}
+
+		wordGenerator random = wordGenerator.shared();
+		for (int i=0; i<numTests; i++) {
+			String test;
+			if (i % 3 == 0) {
+				test = walkTest(random);
+			} else if (i % 3 == 1) {
+				// words of the form u$v, where the length is split between u and a nonempty v
+				int len = Math.max(1, random.nextLength(maxTestLen));
+				int lenV = 1 + random.nextInt(len);
+				int lenU = len - lenV;
+				test = M2MA.addStrings(M2MA.addStrings(M2MA.genTest(lenU, true), "$"), M2MA.genTest(lenV, true));
+			} else {
+				test = M2MA.genTest(random.nextLength(maxTestLen), false);
+			}
+
+			int[] letters = SUBA.toLetters(test);
+			if (M2MA.MQ(test) != M2MA.MQArbitrary(hypothesisFinalVector, hypothesisTransitions, letters, letters.length) && M2MA.addCounterExample(test)) {
+				return false;
+			}
+		}
+
+		// returns the counter-examples found before running out of tests
+		return M2MA.counterExamples.size() == 0;
+	}
+
+	/*
+	 * Position of the exhaustive EQ, the word u$v in the first cursorLen letters of cursor with $ at cursorDollar. The
+	 * words are enumerated by length, then by the position of $, then in lexicographic order, and the enumeration wraps
+	 * around after the longest words. An EQ stops at its first full batch of counter-examples, and the next EQ resumes
+	 * from there, so that the words passed by the earlier hypotheses are not tested first again. Every EQ still tests
+	 * every word before it returns true.
+	 */
+	private static int[] cursor;
+	private static int cursorLen;
+	private static int cursorDollar;
+	// true if the word at the cursor is tested again before moving on
+	private static boolean retest;
+
+	// returns the number of words u$v with a nonempty v of length at most maxTestLen, at most Long.MAX_VALUE
+	private static long numWords() {
+		int numLetters = M2MA.alphabet.length - 1;
+		long total = 0;
+		long power = 1;
+		for (int len=2; len<=maxTestLen; len++) {
+			// (len-1) positions of $ and numLetters^(len-1) other letters
+			power = power > Long.MAX_VALUE / Math.max(1, numLetters) ? Long.MAX_VALUE : power * numLetters;
+			if (power > (Long.MAX_VALUE - total) / (len - 1)) {
+				return Long.MAX_VALUE;
+			}
+			total += power * (len - 1);
+		}
+		return total;
+	}
+
+	// moves the cursor to the first word, "$ a" for the first letter a
+	private static void start() {
+		if (cursor == null) {
+			cursor = new int[Math.max(2, maxTestLen)];
+		}
+		cursorLen = 2;
+		cursorDollar = 0;
+		cursor[0] = M2MA.letterToIndex.get("$");
+		cursor[1] = 0;
+		retest = false;
+	}
+
+	// returns true if the letters of the word at the cursor are the last ones for the position of $
+	private static boolean isLast() {
+		int numLetters = M2MA.alphabet.length - 1;
+		for (int i=0; i<cursorLen; i++) {
+			if (i != cursorDollar && cursor[i] != numLetters - 1) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// moves the cursor to the next word, returns false after the last word
+	private static boolean next() {
+		if (retest) {
+			retest = false;
+			return true;
+		}
+
+		// next letters for the same position of $
+		int numLetters = M2MA.alphabet.length - 1;
+		int i = cursorLen - 1;
+		while (i >= 0 && (i == cursorDollar || cursor[i] == numLetters - 1)) {
+			if (i != cursorDollar) {
+				cursor[i] = 0;
+			}
+			i--;
+		}
+		if (i >= 0) {
+			cursor[i]++;
+			return true;
+		}
+
+		// next position of $, then next length
+		int dollar = cursor[cursorDollar];
+		cursor[cursorDollar] = 0;
+		if (++cursorDollar > cursorLen - 2) {
+			if (++cursorLen > maxTestLen) {
+				return false;
+			}
+			cursorDollar = 0;
+			cursor[cursorLen - 1] = 0;
+		}
+		cursor[cursorDollar] = dollar;
+		return true;
+	}
+
+	/*
+	 * Returns a word u$v that follows the transitions of the SUBA: u is a random walk from q_1 that ends at some q, and
+	 * v is a random walk from q followed by a shortest path back to q, so that u$v is accepted iff v passes by a final
+	 * state on the way. u and v each have a length of up to maxTestLen, so that both can wind around the same cycle.
+	 */
+	private static String walkTest(wordGenerator random) {
+		int lenU = random.nextLength(maxTestLen);
+		int lenV = random.nextLength(maxTestLen);
+
+		ArrayList<Integer> u = new ArrayList<Integer>();
+		int q = walk(1, lenU, u, random);
+		ArrayList<Integer> v = new ArrayList<Integer>();
+		int end = walk(q, lenV, v, random);
+		if (!shortestPath(end, q, v)) {
+			return M2MA.addStrings(toWord(u), "$");
+		}
+		return M2MA.addStrings(M2MA.addStrings(toWord(u), "$"), toWord(v));
+	}
+
+	// appends to word the letters of a random walk of at most len steps from state and returns the last state
+	private static int walk(int state, int len, ArrayList<Integer> word, wordGenerator random) {
+		int numLetters = M2MA.alphabet.length - 1;
+		for (int i=0; i<len; i++) {
+			// a random transition among those leaving state
+			int numTransitions = 0;
+			for (int a=0; a<numLetters; a++) {
+				numTransitions += SUBA.SUBATransitions[state][a].size();
+			}
+			if (numTransitions == 0) {
+				break;
+			}
+
+			int k = random.nextInt(numTransitions);
+			int a = 0;
+			while (k >= SUBA.SUBATransitions[state][a].size()) {
+				k -= SUBA.SUBATransitions[state][a].size();
+				a++;
+			}
+			word.add(a);
+			state = SUBA.SUBATransitions[state][a].get(k);
+		}
+		return state;
+	}
+
+	// appends to word the letters of a shortest path from start to end, returns false if there is none
+	private static boolean shortestPath(int start, int end, ArrayList<Integer> word) {
+		int numLetters = M2MA.alphabet.length - 1;
+		// previous[p] = the state before p on a shortest path from start, letter[p] = the letter read from it
+		int[] previous = new int[SUBA.SUBAStates + 1];
+		int[] letter = new int[SUBA.SUBAStates + 1];
+		Arrays.fill(previous, -1);
+		previous[start] = 0;
+
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+		queue.add(start);
+		while (!queue.isEmpty() && previous[end] == -1) {
+			int p = queue.poll();
+			for (int a=0; a<numLetters; a++) {
+				for (int p_end : SUBA.SUBATransitions[p][a]) {
+					if (previous[p_end] == -1) {
+						previous[p_end] = p;
+						letter[p_end] = a;
+						queue.add(p_end);
+					}
+				}
+			}
+		}
+		if (previous[end] == -1) {
+			return false;
+		}
+
+		ArrayList<Integer> path = new ArrayList<Integer>();
+		for (int p=end; p!=start; p=previous[p]) {
+			path.add(letter[p]);
+		}
+		for (int i=path.size()-1; i>=0; i--) {
+			word.add(path.get(i));
+		}
+		return true;
+	}
+
+	private static String toWord(ArrayList<Integer> letters) {
+		int[] word = new int[letters.size()];
+		for (int i=0; i<word.length; i++) {
+			word[i] = letters.get(i);
+		}
+		return wordGenerator.toWord(word, word.length);
+	}
+}
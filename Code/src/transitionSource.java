@@ -0,0 +1,21 @@
+/*
+ * Author: Nevin George
+ * Advisor: Dana Angluin
+ * Program Description: Rows and columns of the transition matrices of an automaton. The sparse transition matrices
+ * (sparseTransitions.java) and the structured UFA of a SUBA (kroneckerUFA.java) both provide them, so basis(),
+ * minimize() and MQArbitrary() in M2MA.java and krylovMinimization.java are written once for either of them.
+ */
+
+import java.util.function.IntFunction;
+
+public interface transitionSource {
+
+	/*
+	 * Returns the function that gives row k (column k if rows is false) of every transition matrix in the layout of
+	 * M2MA.stackTransitions(), j*(number of letters) + σ in increasing order for every 1 at (k, j) of transitionMatrix_σ.
+	 */
+	IntFunction<int[]> stacked(boolean rows);
+
+	// flips next[j] for every 1 at (k, j) of the transition matrix of letter a
+	void addRow(int k, int a, boolean[] next);
+}
@@ -0,0 +1,195 @@
+/*
+ * Author: Nevin George
+ * Advisor: Dana Angluin
+ * Program Description: Saves the row and column indices of a learned M2MA and uses them to warm-start the learning
+ * algorithm in M2MA.java on a slightly different target. The saved indices are re-evaluated with the new membership
+ * queries, rows and columns that are no longer linearly independent are dropped, and learning continues with the
+ * usual counter-example processing.
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.StringTokenizer;
+
+public class warmStart {
+
+	// file with the indices of a previously learned M2MA (set with warm=file)
+	public static String fileName;
+	// file the indices of the learned M2MA are saved to (set with save=file)
+	public static String saveFileName;
+
+	// written in place of the empty word, since empty lines are skipped by M2MA.readFile
+	public static final String EMPTY = "ɛ";
+
+	// saves the alphabet and the row and column indices of the learned M2MA
+	public static void save() throws Exception {
+		PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(saveFileName), StandardCharsets.UTF_8)));
+
+		out.println("// alphabet");
+		String alphabet = "";
+		for (String letter : M2MA.alphabet) {
+			alphabet = M2MA.addStrings(alphabet, letter);
+		}
+		out.println(alphabet);
+
+		out.println("// dimension");
+		out.println(M2MA.learnedSize);
+
+		out.println("// row indices");
+		for (String row : M2MA.learnedRowIndices) {
+			out.println(row.length() == 0 ? EMPTY : row);
+		}
+
+		out.println("// column indices");
+		for (String col : M2MA.learnedColIndices) {
+			out.println(col.length() == 0 ? EMPTY : col);
+		}
+
+		out.close();
+	}
+
+	/*
+	 * Seeds learnedRowIndices and learnedColIndices with the indices in fileName that remain linearly independent
+	 * under the current membership queries. Returns false if the indices cannot be used, in which case the learning
+	 * algorithm starts from the 1x1 observation table.
+	 */
+	public static boolean seed() throws Exception {
+		BufferedReader f = new BufferedReader(new InputStreamReader(new FileInputStream(fileName), StandardCharsets.UTF_8));
+
+		StringTokenizer st = new StringTokenizer(M2MA.readFile(f));
+		int numLetters = 0;
+		while (st.hasMoreTokens()) {
+			String letter = st.nextToken();
+			if (M2MA.letterToIndex.get(letter) == null) {
+				M2MA.throwException(f, "Invalid input: the warm-start file uses a letter not in the alphabet.");
+			}
+			numLetters++;
+		}
+		if (numLetters != M2MA.alphabet.length) {
+			M2MA.throwException(f, "Invalid input: the warm-start file uses a different alphabet.");
+		}
+
+		int size = Integer.parseInt(M2MA.readFile(f));
+		ArrayList<String> rows = new ArrayList<String>();
+		ArrayList<String> cols = new ArrayList<String>();
+		for (int i=0; i<size; i++) {
+			rows.add(readIndex(f));
+		}
+		for (int i=0; i<size; i++) {
+			cols.add(readIndex(f));
+		}
+		f.close();
+
+		// the empty word must be the first row, since the initial vector of the hypothesis is (1,0,...,0)
+		rows.remove("");
+		rows.add(0, "");
+		if (!cols.contains("")) {
+			cols.add(0, "");
+		}
+
+		// re-evaluate the saved table with the current membership queries
+		long[][] table = new long[rows.size()][(cols.size() + 63) / 64];
+		for (int i=0; i<rows.size(); i++) {
+			for (int j=0; j<cols.size(); j++) {
+				if (M2MA.MQ(M2MA.addStrings(rows.get(i), cols.get(j))) == 1) {
+					table[i][j >> 6] |= 1L << (j & 63);
+				}
+			}
+		}
+
+		// keep the rows that are linearly independent of the previous ones (dropping stale rows)
+		ArrayList<Integer> linIndRows = linIndVectors(table, cols.size());
+		if (linIndRows.size() == 0 || linIndRows.get(0) != 0) {
+			// the row of the empty word is zero
+			return false;
+		}
+
+		// keep as many columns as rows, chosen so that the square table has full rank
+		long[][] transpose = new long[cols.size()][(linIndRows.size() + 63) / 64];
+		for (int i=0; i<linIndRows.size(); i++) {
+			long[] row = table[linIndRows.get(i)];
+			for (int j=0; j<cols.size(); j++) {
+				if ((row[j >> 6] & (1L << (j & 63))) != 0) {
+					transpose[j][i >> 6] |= 1L << (i & 63);
+				}
+			}
+		}
+		ArrayList<Integer> linIndCols = linIndVectors(transpose, linIndRows.size());
+
+		M2MA.learnedRowIndices = new ArrayList<String>();
+		M2MA.learnedColIndices = new ArrayList<String>();
+		for (int i : linIndRows) {
+			M2MA.learnedRowIndices.add(rows.get(i));
+		}
+		for (int j : linIndCols) {
+			M2MA.learnedColIndices.add(cols.get(j));
+		}
+		M2MA.learnedSize = linIndRows.size();
+
+		// the learned M2MA cannot be larger than the minimized target
+		if (M2MA.minSize != 0 && M2MA.learnedSize > M2MA.minSize) {
+			M2MA.throwException(null, "Algorithm failed: size of the hypothesis exceeds that of the target function.");
+		}
+
+		return true;
+	}
+
+	public static String readIndex(BufferedReader f) throws Exception {
+		String index = M2MA.readFile(f);
+		if (index == null) {
+			M2MA.throwException(f, "Invalid input: the warm-start file has fewer indices than its dimension.");
+		}
+		index = index.trim();
+		if (index.equals(EMPTY)) {
+			return "";
+		}
+		if (!M2MA.inAlphabet(index)) {
+			M2MA.throwException(f, "Invalid input: the warm-start file has an index not in the alphabet.");
+		}
+		return index;
+	}
+
+	// returns the indices of a maximal set of linearly independent vectors, chosen greedily in order
+	public static ArrayList<Integer> linIndVectors(long[][] vectors, int length) {
+		ArrayList<Integer> out = new ArrayList<Integer>();
+
+		// reduced basis of the vectors found so far, basis[i] has its lowest 1 at pivots[i]
+		ArrayList<long[]> basis = new ArrayList<long[]>();
+		ArrayList<Integer> pivots = new ArrayList<Integer>();
+
+		for (int v=0; v<vectors.length; v++) {
+			long[] vector = vectors[v].clone();
+			for (int i=0; i<basis.size(); i++) {
+				int pivot = pivots.get(i);
+				if ((vector[pivot >> 6] & (1L << (pivot & 63))) != 0) {
+					long[] basisVector = basis.get(i);
+					for (int k=0; k<vector.length; k++) {
+						vector[k] ^= basisVector[k];
+					}
+				}
+			}
+
+			int pivot = -1;
+			for (int k=0; k<vector.length && pivot == -1; k++) {
+				if (vector[k] != 0) {
+					pivot = (k << 6) + Long.numberOfTrailingZeros(vector[k]);
+				}
+			}
+
+			if (pivot != -1 && pivot < length) {
+				basis.add(vector);
+				pivots.add(pivot);
+				out.add(v);
+			}
+		}
+
+		return out;
+	}
+}
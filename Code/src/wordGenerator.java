@@ -0,0 +1,161 @@
+/*
+ * Author: Nevin George
+ * Advisor: Dana Angluin
+ * Program Description: Generates the random words used by the statistical equivalence queries, the final checks,
+ * and the random automata of convert.java and M2MA_experiments.java. Words are written as arrays of letter indices
+ * into a reusable buffer by a shared generator, which draws from a SplittableRandom stream split off a single seeded
+ * root, so runs can be replayed exactly.
+ */
+
+import java.util.SplittableRandom;
+
+public class wordGenerator {
+
+	// length distributions
+	// uniform on [0, maxLen]
+	public static final int UNIFORM = 0;
+	// geometric with mean meanLength, truncated at maxLen
+	public static final int GEOMETRIC = 1;
+	// always maxLen
+	public static final int FIXED = 2;
+
+	// length distribution used by nextLength(maxLen)
+	public static int lengthDistribution = UNIFORM;
+	public static double meanLength = 5;
+
+	// seed of the root stream, the shared generator is split off the root
+	public static long seed;
+	private static SplittableRandom root;
+
+	// generator used by all of the programs
+	private static wordGenerator shared;
+
+	private final SplittableRandom random;
+	// reusable buffer holding the last generated word
+	private int[] buffer;
+
+	private wordGenerator(SplittableRandom random) {
+		this.random = random;
+		this.buffer = new int[16];
+	}
+
+	// reseeds the root stream and the shared generator
+	public static synchronized void setSeed(long newSeed) {
+		seed = newSeed;
+		root = new SplittableRandom(newSeed);
+		shared = new wordGenerator(root.split());
+	}
+
+	public static synchronized boolean isSeeded() {
+		return root != null;
+	}
+
+	// restarts the shared generator from a seed drawn from its own stream and returns that seed
+	public static synchronized long reseedShared() {
+		long next = shared().random.nextLong();
+		shared = new wordGenerator(new SplittableRandom(next));
+		return next;
+	}
+
+	// restores the root seed and a shared generator returned by reseedShared
+	public static synchronized void restoreShared(long rootSeed, long sharedSeed) {
+		seed = rootSeed;
+		root = new SplittableRandom(rootSeed);
+		shared = new wordGenerator(new SplittableRandom(sharedSeed));
+	}
+
+	public static synchronized wordGenerator shared() {
+		if (shared == null) {
+			setSeed(new SplittableRandom().nextLong());
+		}
+		return shared;
+	}
+
+	// returns a uniformly random integer in [0, bound)
+	public int nextInt(int bound) {
+		return random.nextInt(bound);
+	}
+
+	// returns a uniformly random double in [0, 1)
+	public double nextDouble() {
+		return random.nextDouble();
+	}
+
+	// returns a random length in [0, maxLen] following lengthDistribution
+	public int nextLength(int maxLen) {
+		return nextLength(lengthDistribution, maxLen);
+	}
+
+	public int nextLength(int distribution, int maxLen) {
+		if (maxLen <= 0) {
+			return 0;
+		}
+
+		if (distribution == FIXED) {
+			return maxLen;
+		} else if (distribution == GEOMETRIC) {
+			// number of failures before the first success, with success probability 1/(meanLength+1)
+			double p = 1 / (meanLength + 1);
+			int len = (int) (Math.log(1 - random.nextDouble()) / Math.log(1 - p));
+			return Math.min(len, maxLen);
+		}
+
+		return random.nextInt(maxLen + 1);
+	}
+
+	/*
+	 * Writes a random word of length len over the first alphabetSize letters into the buffer and returns the buffer.
+	 * Only the first len entries are part of the word, the buffer is overwritten by the next call.
+	 */
+	public int[] next(int len, int alphabetSize) {
+		if (buffer.length < len) {
+			buffer = new int[Math.max(len, 2 * buffer.length)];
+		}
+
+		for (int i=0; i<len; i++) {
+			buffer[i] = random.nextInt(alphabetSize);
+		}
+		return buffer;
+	}
+
+	// converts the first len letter indices of word into a space-separated word over M2MA.alphabet
+	public static String toWord(int[] word, int len) {
+		if (len == 0) {
+			return "";
+		}
+
+		StringBuilder out = new StringBuilder();
+		out.append(M2MA.alphabet[word[0]]);
+		for (int i=1; i<len; i++) {
+			out.append(' ').append(M2MA.alphabet[word[i]]);
+		}
+		return out.toString();
+	}
+
+	// sets the seed and length distribution from an option of the form seed=N or lengths=uniform|geometric[:mean]|fixed
+	public static boolean parseOption(String option) {
+		if (option.startsWith("seed=")) {
+			setSeed(Long.parseLong(option.substring(5)));
+			return true;
+		}
+
+		if (option.startsWith("lengths=")) {
+			String[] dist = option.substring(8).split(":");
+			if (dist[0].equals("uniform")) {
+				lengthDistribution = UNIFORM;
+			} else if (dist[0].equals("geometric")) {
+				lengthDistribution = GEOMETRIC;
+				if (dist.length > 1) {
+					meanLength = Double.parseDouble(dist[1]);
+				}
+			} else if (dist[0].equals("fixed")) {
+				lengthDistribution = FIXED;
+			} else {
+				return false;
+			}
+			return true;
+		}
+
+		return false;
+	}
+}